@@ -0,0 +1,340 @@
+import java.awt.EventQueue;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.ImageIcon;
+
+/**
+ * The game backgrounds, each decoded and scaled for the size of the board and
+ * kept until the board changes size. The backgrounds are big images, so they
+ * are only decoded at every nth pixel when that still leaves enough of them to
+ * fill the board, which is much less to decode, and then scaled the rest of
+ * the way. The results are images the screen can copy straight from.
+ *
+ * Decoding happens on a thread of its own, so the board asks for a background
+ * and is told when it's ready, and draws the last one it had until then. Only
+ * the latest size asked for is decoded, so resizing the board doesn't queue a
+ * decode for every size it goes through. Which background the next game gets
+ * isn't known until it starts, so once the size has stayed the same for a
+ * while the others are decoded for it too, and a new game finds its
+ * background ready
+ */
+public class BackgroundCache {
+
+	private static final BackgroundCache instance = new BackgroundCache();
+
+	// Enough for every background at one size, with room for a resize
+	private static final int CAPACITY = 10;
+
+	// How long the size has to stay the same before the other backgrounds
+	// are decoded for it, in milliseconds
+	private static final long PREFETCH_DELAY = 500;
+
+	// Keyed by the file name and the size, the least recently used first
+	private final Map<String, BufferedImage> images;
+	// The decodes queued or running, keyed the same way, each with who to
+	// tell when it's done. Guarded by images
+	private final Map<String, List<Runnable>> loading = new HashMap<>();
+	// Backgrounds that couldn't be read, which aren't tried again
+	private final Set<String> unreadable = new HashSet<>();
+	private final ScheduledExecutorService executor;
+	// The size the backgrounds are wanted at now, so decodes for a size that
+	// has since changed can be skipped. Set while holding images
+	private volatile long wantedSize = -1;
+
+	private BackgroundCache() {
+		images = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+				return size() > CAPACITY;
+			}
+		};
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Background decoder");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	public static BackgroundCache getInstance() {
+		return instance;
+	}
+
+	private static String key(String name, int width, int height) {
+		return name + "@" + width + "x" + height;
+	}
+
+	/**
+	 * Gets a background for a board of the given size, decoding it on the
+	 * calling thread if it isn't ready
+	 *
+	 * @param name the file name under images/
+	 * @param width
+	 * @param height
+	 * @return the image, or null if it can't be read
+	 */
+	public BufferedImage get(String name, int width, int height) {
+		String key = key(name, width, height);
+		synchronized (images) {
+			BufferedImage image = images.get(key);
+			if (image != null) {
+				return image;
+			}
+		}
+		BufferedImage image = load(name, width, height);
+		if (image != null) {
+			synchronized (images) {
+				images.put(key, image);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Gets a background for a board of the given size if it's ready, and
+	 * otherwise has it decoded, unless that's already under way, and tells
+	 * the listener once it's done. Decodes still waiting for any other size
+	 * are dropped
+	 *
+	 * @param name the file name under images/
+	 * @param width
+	 * @param height
+	 * @param ready run on the event dispatch thread once the image is ready,
+	 * and can be null
+	 * @return the image, or null if it isn't ready or can't be read
+	 */
+	public BufferedImage request(String name, int width, int height, Runnable ready) {
+		String key = key(name, width, height);
+		synchronized (images) {
+			wantedSize = (long) width << 32 | height;
+			BufferedImage image = images.get(key);
+			if (image != null || unreadable.contains(name)) {
+				return image;
+			}
+			List<Runnable> waiting = loading.get(key);
+			if (waiting == null) {
+				waiting = new ArrayList<>();
+				loading.put(key, waiting);
+				executor.execute(decoder(name, width, height));
+			}
+			if (ready != null && !waiting.contains(ready)) {
+				waiting.add(ready);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes backgrounds for a board of the given size on the background
+	 * thread, leaving out any already done. It waits a little first and
+	 * gives up as soon as another size is wanted, so a board that is still
+	 * being resized doesn't fill the cache with sizes it's gone past
+	 *
+	 * @param names file names under images/
+	 * @param width
+	 * @param height
+	 */
+	public void prefetch(final String[] names, final int width, final int height) {
+		final long size = (long) width << 32 | height;
+		synchronized (images) {
+			wantedSize = size;
+		}
+		executor.schedule(new Runnable() {
+			private int next = 0;
+
+			@Override
+			public void run() {
+				while (next < names.length && wantedSize == size) {
+					String name = names[next++];
+					String key = key(name, width, height);
+					synchronized (images) {
+						if (images.containsKey(key) || loading.containsKey(key)
+								|| unreadable.contains(name)) {
+							continue;
+						}
+						loading.put(key, new ArrayList<Runnable>());
+					}
+					decoder(name, width, height).run();
+					// One at a time, so a background that's wanted now can
+					// go ahead of the rest
+					executor.execute(this);
+					return;
+				}
+			}
+		}, PREFETCH_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Makes the job that decodes a background already entered in loading
+	 *
+	 * @param name
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	private Runnable decoder(final String name, final int width, final int height) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				String key = key(name, width, height);
+				synchronized (images) {
+					if (wantedSize != ((long) width << 32 | height)) {
+						loading.remove(key);
+						return;
+					}
+				}
+				BufferedImage image = load(name, width, height);
+				List<Runnable> waiting;
+				synchronized (images) {
+					if (image != null) {
+						images.put(key, image);
+					} else {
+						unreadable.add(name);
+					}
+					waiting = loading.remove(key);
+				}
+				if (image != null) {
+					for (Runnable ready : waiting) {
+						EventQueue.invokeLater(ready);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Works out how big to draw a background on a board, the way the board
+	 * always has. It's left alone if it fits, and otherwise scaled so that the
+	 * side that is the least too big, or the most too small, fits exactly
+	 *
+	 * @param imageWidth
+	 * @param imageHeight
+	 * @param width the board's
+	 * @param height the board's
+	 * @return the width and the height
+	 */
+	private static int[] scaledSize(int imageWidth, int imageHeight, int width, int height) {
+		int xDiff = width - imageWidth;
+		int yDiff = height - imageHeight;
+		if (xDiff >= 0 && yDiff >= 0) {
+			return new int[]{imageWidth, imageHeight};
+		}
+		if (xDiff - yDiff >= 0) {
+			return new int[]{width, Math.max(1, imageHeight * width / imageWidth)};
+		}
+		return new int[]{Math.max(1, imageWidth * height / imageHeight), height};
+	}
+
+	private BufferedImage load(String name, int width, int height) {
+		BufferedImage decoded;
+		int[] size;
+		try (InputStream input = BackgroundCache.class.getResourceAsStream("images/" + name)) {
+			if (input == null) {
+				System.err.println("No background called " + name);
+				return null;
+			}
+			ImageInputStream stream = ImageIO.createImageInputStream(input);
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext()) {
+				System.err.println("Can't decode " + name);
+				return null;
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, true, true);
+				int imageWidth = reader.getWidth(0);
+				int imageHeight = reader.getHeight(0);
+				size = scaledSize(imageWidth, imageHeight, width, height);
+				// Skip pixels as long as there are still as many as will be drawn
+				int step = Math.max(1, Math.min(imageWidth / size[0], imageHeight / size[1]));
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(step, step, 0, 0);
+				decoded = reader.read(0, param);
+			} finally {
+				reader.dispose();
+				stream.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't read " + name + ": " + e.getMessage());
+			return null;
+		}
+
+		int transparency = decoded.getColorModel().hasAlpha()
+				? Transparency.TRANSLUCENT : Transparency.OPAQUE;
+		BufferedImage image;
+		if (GraphicsEnvironment.isHeadless()) {
+			image = new BufferedImage(size[0], size[1], transparency == Transparency.OPAQUE
+					? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		} else {
+			image = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration()
+					.createCompatibleImage(size[0], size[1], transparency);
+		}
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(decoded, 0, 0, size[0], size[1], null);
+		g.dispose();
+		return image;
+	}
+
+	/**
+	 * Times getting every background for a board the old way, decoded whole
+	 * and scaled on every paint, and through the cache, the first time and
+	 * after. Arguments are optional: the board's width and height
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int width = args.length > 1 ? Integer.parseInt(args[0]) : 800;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 740;
+		BackgroundCache cache = getInstance();
+		for (String name : GamePanel.BACKGROUNDS) {
+			long start = System.nanoTime();
+			ImageIcon image = new ImageIcon(
+					BackgroundCache.class.getResource("images/" + name));
+			int[] size = scaledSize(image.getIconWidth(), image.getIconHeight(), width, height);
+			image = new ImageIcon(image.getImage().getScaledInstance(
+					size[0], size[1], Image.SCALE_DEFAULT));
+			long old = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			BufferedImage first = cache.get(name, width, height);
+			long decoded = System.nanoTime() - start;
+			start = System.nanoTime();
+			cache.get(name, width, height);
+			long cached = System.nanoTime() - start;
+			System.out.println(String.format("%-28s %4dx%-4d old %6.1f ms, decoded %6.1f ms,"
+					+ " cached %6.3f ms", name, first.getWidth(), first.getHeight(),
+					old / 1e6, decoded / 1e6, cached / 1e6));
+		}
+	}
+}
@@ -6,11 +6,5 @@ public class Bamboo1Tile extends PictureTile {
 	public Bamboo1Tile()
 	{
 		super("Sparrow");
-		System.out.println("test");
-	}
-
-	public String toString()
-	{
-		return "Bamboo 1";
 	}
 }
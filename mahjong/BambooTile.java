@@ -17,20 +17,16 @@ public class BambooTile extends RankTile {
 	private final int BAMBOO_Y_SIZE = 20;
 	
     public BambooTile(int rank) {
-        super(rank);
-		
-		setToolTipText(toString());
+        super(TileFace.ranked(TileFace.Kind.BAMBOO, rank));
     }
     
 	@Override
-	protected void paintComponent(Graphics g) {
-		super.paintComponent(g);
-		
+	protected void paintFace(Graphics g) {
 		int xStart;
 		int yStart;
 		Color[] colors;
 		
-		switch (rank) {
+		switch (getRank()) {
 		case 2:
 			xStart = (WIDTH - 10) / 2 + 10;
 			yStart = 15;
@@ -188,12 +184,4 @@ public class BambooTile extends RankTile {
 		graphics.rotate(Math.toRadians(-slope));
 		graphics.translate(-xStart, -yStart);
 	}
-	
-	@Override
-    public String toString() {
-        if (rank < 2 || rank > 9) {
-            return "Invalid Bamboo Tile";
-        }
-        return "Bamboo " + rank;
-    }
 }
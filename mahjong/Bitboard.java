@@ -0,0 +1,245 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A layout's blocking graph compiled down to bit masks, for layouts of up to
+ * 192 positions such as the 144 tile turtle. A board is three longs with one
+ * bit per occupied position, and every open tile on it comes out of a few
+ * shifts, ANDs and ORs instead of a check per position.
+ *
+ * Bits are numbered by row, then layer, then column, so that side by side
+ * tiles are neighbouring bits and a tile and the one on top of it are the same
+ * distance apart all along a row. Each distinct distance is one shift of the
+ * whole board, masked to the positions that are blocked from that far away
+ */
+public class Bitboard {
+
+	public static final int WORDS = 3;
+	public static final int MAX_POSITIONS = WORDS * Long.SIZE;
+
+	private final Layout layout;
+	private final int[] bits;
+	private final int[] positions;
+
+	// One set of shifts and masks per relation: above, left and right
+	private final Relation aboveRelation;
+	private final Relation leftRelation;
+	private final Relation rightRelation;
+
+	public Bitboard(final Layout layout) {
+		if (layout.size() > MAX_POSITIONS) {
+			throw new IllegalArgumentException("A bitboard holds at most " +
+					MAX_POSITIONS + " positions, the layout has " + layout.size());
+		}
+		this.layout = layout;
+
+		Integer[] order = new Integer[layout.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer position1, Integer position2) {
+				int comparison = Integer.compare(layout.getY(position1), layout.getY(position2));
+				if (comparison == 0) {
+					comparison = Integer.compare(layout.getZ(position1), layout.getZ(position2));
+				}
+				if (comparison == 0) {
+					comparison = Integer.compare(layout.getX(position1), layout.getX(position2));
+				}
+				return comparison;
+			}
+		});
+		bits = new int[layout.size()];
+		positions = new int[layout.size()];
+		for (int bit = 0; bit < order.length; bit++) {
+			bits[order[bit]] = bit;
+			positions[bit] = order[bit];
+		}
+
+		int[][] above = new int[layout.size()][];
+		int[][] left = new int[layout.size()][];
+		int[][] right = new int[layout.size()][];
+		for (int i = 0; i < layout.size(); i++) {
+			above[i] = layout.getAbove(i);
+			left[i] = layout.getLeft(i);
+			right[i] = layout.getRight(i);
+		}
+		aboveRelation = new Relation(above);
+		leftRelation = new Relation(left);
+		rightRelation = new Relation(right);
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Returns the bit a position is stored in
+	 *
+	 * @param position
+	 * @return
+	 */
+	public int getBit(int position) {
+		return bits[position];
+	}
+
+	/**
+	 * Returns the position stored in a bit
+	 *
+	 * @param bit
+	 * @return
+	 */
+	public int getPosition(int bit) {
+		return positions[bit];
+	}
+
+	/**
+	 * Returns the number of shift and mask steps it takes to find the open
+	 * tiles, which is the number of distinct blocking distances
+	 *
+	 * @return
+	 */
+	public int getShiftCount() {
+		return aboveRelation.shifts.length + leftRelation.shifts.length
+				+ rightRelation.shifts.length;
+	}
+
+	public void set(long[] board, int position) {
+		int bit = bits[position];
+		board[bit >>> 6] |= 1L << bit;
+	}
+
+	public void clear(long[] board, int position) {
+		int bit = bits[position];
+		board[bit >>> 6] &= ~(1L << bit);
+	}
+
+	public boolean isSet(long[] board, int position) {
+		int bit = bits[position];
+		return (board[bit >>> 6] & (1L << bit)) != 0;
+	}
+
+	/**
+	 * Fills a board with every position of the layout
+	 *
+	 * @param board
+	 */
+	public void fill(long[] board) {
+		Arrays.fill(board, 0);
+		for (int bit = 0; bit < positions.length; bit++) {
+			board[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * Works out which of the tiles on a board are open. This doesn't allocate
+	 * anything, so it can run over as many boards as needed
+	 *
+	 * @param occupied the board
+	 * @param open filled with the occupied positions that are open
+	 */
+	public void open(long[] occupied, long[] open) {
+		for (int word = 0; word < WORDS; word++) {
+			long blockedAbove = aboveRelation.blocked(occupied, word);
+			long blockedLeft = leftRelation.blocked(occupied, word);
+			long blockedRight = rightRelation.blocked(occupied, word);
+			open[word] = occupied[word] & ~blockedAbove & ~(blockedLeft & blockedRight);
+		}
+	}
+
+	/**
+	 * Counts the positions set on a board
+	 *
+	 * @param board
+	 * @return
+	 */
+	public static int count(long[] board) {
+		int count = 0;
+		for (long word : board) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * One blocking relation as a list of bit distances, each with the mask of
+	 * positions that have a blocker that far away
+	 */
+	private class Relation {
+		private final int[] shifts;
+		private final int[] wordShifts;
+		private final int[] bitShifts;
+		private final long[][] masks;
+
+		private Relation(int[][] blockers) {
+			Map<Integer, long[]> byShift = new TreeMap<>();
+			for (int position = 0; position < blockers.length; position++) {
+				for (int blocker : blockers[position]) {
+					int shift = bits[blocker] - bits[position];
+					long[] mask = byShift.get(shift);
+					if (mask == null) {
+						mask = new long[WORDS];
+						byShift.put(shift, mask);
+					}
+					mask[bits[position] >>> 6] |= 1L << bits[position];
+				}
+			}
+
+			shifts = new int[byShift.size()];
+			wordShifts = new int[byShift.size()];
+			bitShifts = new int[byShift.size()];
+			masks = new long[byShift.size()][];
+			int index = 0;
+			for (Map.Entry<Integer, long[]> entry : byShift.entrySet()) {
+				shifts[index] = entry.getKey();
+				wordShifts[index] = Math.floorDiv(shifts[index], Long.SIZE);
+				bitShifts[index] = Math.floorMod(shifts[index], Long.SIZE);
+				masks[index] = entry.getValue();
+				index++;
+			}
+		}
+
+		/**
+		 * Returns one word of the positions that have at least one of their
+		 * blockers on the board
+		 *
+		 * @param occupied
+		 * @param word
+		 * @return
+		 */
+		private long blocked(long[] occupied, int word) {
+			long blocked = 0;
+			for (int i = 0; i < shifts.length; i++) {
+				blocked |= shifted(occupied, word + wordShifts[i], bitShifts[i])
+						& masks[i][word];
+			}
+			return blocked;
+		}
+
+		/**
+		 * Returns one word of the board moved down by a number of bits, so
+		 * that each bit holds the bit that was that far above it. The distance
+		 * is split into whole words and the bits left over
+		 *
+		 * @param board
+		 * @param word the word to read from, after the whole word shift
+		 * @param bitShift from 0 to 63
+		 * @return
+		 */
+		private long shifted(long[] board, int word, int bitShift) {
+			long low = word(board, word);
+			if (bitShift == 0) {
+				return low;
+			}
+			long high = word(board, word + 1);
+			return (low >>> bitShift) | (high << (Long.SIZE - bitShift));
+		}
+
+		private long word(long[] board, int word) {
+			return word < 0 || word >= WORDS ? 0 : board[word];
+		}
+	}
+}
@@ -0,0 +1,135 @@
+import java.util.Random;
+
+/**
+ * Checks the bitboard open computation against the coordinate rules isOpen
+ * has always used, over random games and random boards
+ */
+public class BitboardCheck {
+
+	public static void main(String[] args) {
+		Layout layout = Layout.TURTLE;
+		Bitboard bitboard = layout.getBitboard();
+		long[] board = new long[Bitboard.WORDS];
+		long[] open = new long[Bitboard.WORDS];
+		int[] moves = new int[MahjongEngine.MAX_MOVES * 2];
+		int failures = 0;
+
+		// Played out games, checked after every move
+		for (long game = 0; game < 500; game++) {
+			MahjongEngine engine = new MahjongEngine(layout);
+			Random random = new Random(game);
+			engine.deal(random);
+			while (true) {
+				engine.getBoard(board);
+				bitboard.open(board, open);
+				failures += compare(layout, bitboard, board, open);
+				int count = engine.getMoves(moves);
+				if (count == 0) {
+					break;
+				}
+				int move = random.nextInt(count);
+				engine.remove(moves[move * 2]);
+				engine.remove(moves[move * 2 + 1]);
+			}
+		}
+
+		if (failures == 0) {
+			System.out.println("Bitboard open, played games:  PASS");
+		} else {
+			System.out.println("Bitboard open, played games:  FAIL (" + failures + ")");
+		}
+
+		// Boards no game could reach, with tiles missing anywhere
+		Random random = new Random(144);
+		failures = 0;
+		for (int i = 0; i < 10000; i++) {
+			bitboard.fill(board);
+			int density = 1 + random.nextInt(8);
+			for (int position = 0; position < layout.size(); position++) {
+				if (random.nextInt(8) >= density) {
+					bitboard.clear(board, position);
+				}
+			}
+			bitboard.open(board, open);
+			failures += compare(layout, bitboard, board, open);
+		}
+
+		if (failures == 0) {
+			System.out.println("Bitboard open, random boards: PASS");
+		} else {
+			System.out.println("Bitboard open, random boards: FAIL (" + failures + ")");
+		}
+
+		int rounds = 1000000;
+		long start = System.nanoTime();
+		for (int i = 0; i < rounds; i++) {
+			board[0] ^= i;
+			bitboard.open(board, open);
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println(bitboard.getShiftCount() + " shifts per board, "
+				+ (rounds * 1000L / Math.max(1, elapsed / 1000000)) + " boards per second");
+	}
+
+	/**
+	 * Compares the bitboard result with the old isOpen for every position
+	 *
+	 * @param layout
+	 * @param bitboard
+	 * @param board
+	 * @param open
+	 * @return the number of positions that disagree
+	 */
+	private static int compare(Layout layout, Bitboard bitboard, long[] board, long[] open) {
+		int failures = 0;
+		for (int position = 0; position < layout.size(); position++) {
+			boolean expected = bitboard.isSet(board, position)
+					&& isOpen(layout, bitboard, board, position);
+			if (expected != bitboard.isSet(open, position)) {
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * The open check as GamePanel.isOpen wrote it, on coordinates
+	 */
+	private static boolean isOpen(Layout layout, Bitboard bitboard, long[] board, int position) {
+		int xPos = layout.getX(position);
+		int yPos = layout.getY(position);
+		int zPos = layout.getZ(position);
+
+		if (getTile(layout, bitboard, board, xPos, yPos, zPos - 1)) {
+			return false;
+		}
+
+		boolean isOpenLeft = !getTile(layout, bitboard, board, xPos - 1, yPos, zPos)
+				&& (xPos != 1 || !getTile(layout, bitboard, board, xPos - 2, yPos, zPos));
+		boolean isOpenRight = !getTile(layout, bitboard, board, xPos + 1, yPos, zPos)
+				&& (xPos != -1 || !getTile(layout, bitboard, board, xPos + 2, yPos, zPos));
+		boolean isMiddleY = Math.abs(yPos) == 1;
+		boolean isZeroY = yPos == 0;
+		if (isOpenLeft && isMiddleY) {
+			isOpenLeft = !getTile(layout, bitboard, board, xPos - 1, 0, zPos);
+		} else if (isOpenLeft && isZeroY) {
+			isOpenLeft = !getTile(layout, bitboard, board, xPos - 1, 1, zPos)
+					&& !getTile(layout, bitboard, board, xPos - 1, -1, zPos);
+		}
+		if (isOpenRight && isMiddleY) {
+			isOpenRight = !getTile(layout, bitboard, board, xPos + 1, 0, zPos);
+		}
+
+		if (isMiddleY && Math.abs(xPos) == 1 && getTile(layout, bitboard, board, 0, 0, 0)) {
+			return false;
+		}
+
+		return isOpenLeft || isOpenRight;
+	}
+
+	private static boolean getTile(Layout layout, Bitboard bitboard, long[] board,
+			int xPos, int yPos, int zPos) {
+		int position = layout.indexOf(xPos, yPos, zPos);
+		return position >= 0 && bitboard.isSet(board, position);
+	}
+}
@@ -9,9 +9,6 @@ public class CharacterTile extends Tile {
 	private static final long serialVersionUID = 9195762811283553381L;
 
 	private static final Map<Character, String> symbols;
-	private static final Map<Character, String> symbolNames;
-
-	protected char symbol;
 	
 	static {
 		symbols = new HashMap<Character, String>();
@@ -31,41 +28,28 @@ public class CharacterTile extends Tile {
 		symbols.put('C', "\u4E2D");
 		symbols.put('F', "\u767C");
 		symbols.put('w', "\u842C");
-		
-		symbolNames = new HashMap<Character, String>();
-		for (int i = 1; i < 10; i++) {
-			symbolNames.put(Character.forDigit(i, 10), "Character " + i);
-		}
-		symbolNames.put('N', "North Wind");
-		symbolNames.put('E', "East Wind");
-		symbolNames.put('W', "West Wind");
-		symbolNames.put('S', "South Wind");
-		symbolNames.put('C', "Red Dragon");
-		symbolNames.put('F', "Green Dragon");
 	}
     
     public CharacterTile(char symbol) {
-		if (symbols.get(symbol) == null) {
-			throw new IllegalArgumentException("Invalid character to initialize " +
-					"character tile (" + symbol + ")");
-		}
-        this.symbol = symbol;
-		
-		setToolTipText(toString());
+		super(characterFace(symbol));
     }
 	public CharacterTile(char symbol, boolean drawRound) {
 		this(symbol);
 		this.drawRound = drawRound;
 	}
     
-	@Override
-    public boolean matches(Tile otherTile) {
-        return super.matches(otherTile) && this.symbol == ((CharacterTile) otherTile).symbol;
-    }
+	private static TileFace characterFace(char symbol) {
+		TileFace face = TileFace.character(symbol);
+		if (face == null) {
+			throw new IllegalArgumentException("Invalid character to initialize " +
+					"character tile (" + symbol + ")");
+		}
+		return face;
+	}
 
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
+    protected void paintFace(Graphics g) {
+		char symbol = face.getSymbol();
 		
 		Font font = g.getFont();
 
@@ -104,13 +88,4 @@ public class CharacterTile extends Tile {
 			g.drawString(symbols.get('w'), x, y * 2);
 		}
     }
-    
-	@Override
-    public String toString() {
-		String name = symbolNames.get(symbol);
-		if (name == null) {
-			return "Invalid character string";
-		}
-		return name;
-    }
 }
@@ -7,22 +7,18 @@ public class CircleTile extends RankTile {
 	private static final long serialVersionUID = -5381487488197118328L;
 
 	public CircleTile(int rank) {
-        super(rank);
-		
-		setToolTipText(toString());
+        super(TileFace.ranked(TileFace.Kind.CIRCLE, rank));
     }
     
 	@Override
-	protected void paintComponent(Graphics g) {
-		super.paintComponent(g);
-		
+	protected void paintFace(Graphics g) {
 		int size;
 		int xStart;
 		int yStart;
 		int spacing;
 		Color[] colors;
 		
-		switch (rank) {
+		switch (getRank()) {
 		case 1:
 			size = 50;
 			g.setColor(GREEN);
@@ -205,12 +201,4 @@ public class CircleTile extends RankTile {
 		g.setColor(WHITE);
 		g.fillPolygon(xPoints, yPoints, 5);
 	}
-	
-	@Override
-    public String toString() {
-        if (rank < 1 || rank > 9) {
-            return "Invalid Circle Tile";
-        }
-        return "Circle " + rank;
-    }
 }
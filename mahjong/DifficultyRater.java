@@ -0,0 +1,195 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rates how hard a deal is from what it takes to win it. The solver finds a
+ * winning line, and the effort that took is the biggest part of the rating.
+ * Random playouts stand in for counting the winning lines, since a deal that
+ * random play often clears has plenty of them. Walking the winning line gives
+ * the number of moves on offer at each turn, and the longest stretch where
+ * there was only one.
+ *
+ * A rating costs one short solve and a few milliseconds of playouts, cheap
+ * enough to do while starting a game. The solver's table is cleared and the
+ * playouts are seeded from the position, so a deal gets the same rating
+ * every time
+ */
+public class DifficultyRater {
+
+	/**
+	 * The default time the solver gets, in milliseconds
+	 */
+	public static final long DEFAULT_TIME_LIMIT = 200;
+
+	private static final int PLAYOUTS = 64;
+
+	// Small enough to clear before every rating
+	private static final int TABLE_BITS = 16;
+
+	// What each statistic counts for in the score, out of 10
+	private static final int EFFORT_WEIGHT = 4;
+	private static final int LUCK_WEIGHT = 3;
+	private static final int BRANCHING_WEIGHT = 2;
+	private static final int FORCED_WEIGHT = 1;
+
+	private final Solver solver = new Solver(TABLE_BITS);
+	private final Random random = new Random();
+	private final int[] moves = new int[MahjongEngine.MAX_MOVES * 2];
+	private final MahjongEngine scratch = new MahjongEngine();
+
+	/**
+	 * Solves and rates a position
+	 *
+	 * @param engine
+	 * @param timeLimitMillis how long the solver gets
+	 * @return the rating, or null unless the position was shown to be winnable
+	 */
+	public DifficultyRating rate(MahjongEngine engine, long timeLimitMillis) {
+		return rate(engine, timeLimitMillis, null);
+	}
+
+	private DifficultyRating rate(MahjongEngine engine, long timeLimitMillis,
+			AtomicBoolean cancel) {
+		solver.clear();
+		SolverResult result = solver.solve(engine, timeLimitMillis, cancel);
+		if (!result.isWinnable()) {
+			return null;
+		}
+		scratch.copyFrom(engine);
+
+		random.setSeed(scratch.getHash());
+		int won = 0;
+		for (int i = 0; i < PLAYOUTS; i++) {
+			if (Playout.random(scratch, random, moves)) {
+				won++;
+			}
+		}
+
+		int[] line = result.getMoves();
+		long choices = 0;
+		int forced = 0;
+		int forcedDepth = 0;
+		for (int i = 0; i < line.length; i += 2) {
+			int count = scratch.getMoves(moves);
+			choices += count;
+			forced = count == 1 ? forced + 1 : 0;
+			forcedDepth = Math.max(forcedDepth, forced);
+			scratch.play(line[i], line[i + 1]);
+		}
+		double branching = line.length == 0 ? 0 : choices * 2.0 / line.length;
+
+		// Each statistic is scaled from 0 for easy to 1 for hard, over the
+		// range deals actually cover
+		double effort = scale(Math.log10(result.getNodes() + 1), 2, 5.5);
+		double luck = 1 - scale(won, 0, PLAYOUTS / 4.0);
+		double narrow = 1 - scale(branching, 3.5, 6.5);
+		double depth = scale(forcedDepth, 0, 10);
+		double hardness = (effort * EFFORT_WEIGHT + luck * LUCK_WEIGHT
+				+ narrow * BRANCHING_WEIGHT + depth * FORCED_WEIGHT) / 10;
+		int score = (int) Math.round(hardness * DifficultyRating.MAX_SCORE);
+
+		return new DifficultyRating(score, result.getNodes(), branching, won,
+				PLAYOUTS, forcedDepth);
+	}
+
+	private static double scale(double value, double low, double high) {
+		return Math.max(0, Math.min(1, (value - low) / (high - low)));
+	}
+
+	/**
+	 * Rates random game numbers until one falls in the band, or time is up
+	 *
+	 * @param band
+	 * @param built whether games are built by ReverseDealer rather than
+	 * shuffled
+	 * @param random picks the game numbers
+	 * @param timeLimitMillis
+	 * @param cancel settles for the closest game so far once it's set, even
+	 * if that was before the search started, and can be null
+	 * @return the game number, the closest to the band if time ran out, or -1
+	 * if no game could be rated at all
+	 */
+	public long findGame(DifficultyRating.Band band, boolean built, Random random,
+			long timeLimitMillis, AtomicBoolean cancel) {
+		long deadline = System.nanoTime() + timeLimitMillis * 1000000L;
+		MahjongEngine engine = new MahjongEngine();
+		long best = -1;
+		int bestDistance = Integer.MAX_VALUE;
+		while (cancel == null || !cancel.get()) {
+			long left = (deadline - System.nanoTime()) / 1000000;
+			if (left <= 0) {
+				break;
+			}
+			long seed = random.nextInt(WinnableSeeds.SEED_COUNT);
+			if (built) {
+				engine.dealWinnable(seed);
+			} else {
+				engine.deal(seed);
+			}
+			DifficultyRating rating = rate(engine, Math.min(left, DEFAULT_TIME_LIMIT), cancel);
+			if (rating == null) {
+				continue;
+			}
+			int distance = band.distance(rating.getScore());
+			if (distance < bestDistance) {
+				best = seed;
+				bestDistance = distance;
+				if (distance == 0) {
+					break;
+				}
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Rates a range of games and prints how they spread over the bands.
+	 * Arguments are optional: -built, -t and a time limit in milliseconds, and
+	 * the first and last game numbers
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		long timeLimit = DEFAULT_TIME_LIMIT;
+		boolean built = false;
+		long first = 0;
+		long last = 99;
+		int numbers = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-t") && i + 1 < args.length) {
+				timeLimit = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-built")) {
+				built = true;
+			} else if (numbers++ == 0) {
+				first = Long.parseLong(args[i]);
+			} else {
+				last = Long.parseLong(args[i]);
+			}
+		}
+
+		DifficultyRater rater = new DifficultyRater();
+		MahjongEngine engine = new MahjongEngine();
+		int[] bands = new int[DifficultyRating.Band.values().length];
+		int unrated = 0;
+		long start = System.nanoTime();
+		for (long game = first; game <= last; game++) {
+			if (built) {
+				engine.dealWinnable(game);
+			} else {
+				engine.deal(game);
+			}
+			DifficultyRating rating = rater.rate(engine, timeLimit);
+			if (rating == null) {
+				unrated++;
+				System.out.println(String.format("Game %06d: not shown to be winnable", game));
+			} else {
+				bands[rating.getBand().ordinal()]++;
+				System.out.println(String.format("Game %06d: %s", game, rating));
+			}
+		}
+		long count = last - first + 1;
+		System.out.println(String.format("%d easy, %d medium, %d hard, %d unrated;"
+				+ " %.1f ms a game", bands[0], bands[1], bands[2], unrated,
+				(System.nanoTime() - start) / 1e6 / count));
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * How hard a winnable deal is, and the statistics the rating came from
+ */
+public class DifficultyRating {
+
+	public enum Band {
+		EASY, MEDIUM, HARD;
+
+		/**
+		 * Finds the band a score falls in
+		 *
+		 * @param score from 0 to MAX_SCORE
+		 * @return
+		 */
+		public static Band forScore(int score) {
+			if (score < MEDIUM_SCORE) {
+				return EASY;
+			}
+			return score < HARD_SCORE ? MEDIUM : HARD;
+		}
+
+		/**
+		 * Returns how far a score is from this band
+		 *
+		 * @param score
+		 * @return 0 for a score in the band
+		 */
+		public int distance(int score) {
+			int low = this == EASY ? 0 : this == MEDIUM ? MEDIUM_SCORE : HARD_SCORE;
+			int high = this == EASY ? MEDIUM_SCORE - 1 : this == MEDIUM ? HARD_SCORE - 1 : MAX_SCORE;
+			return score < low ? low - score : score > high ? score - high : 0;
+		}
+
+		@Override
+		public String toString() {
+			return name().charAt(0) + name().substring(1).toLowerCase();
+		}
+	}
+
+	/**
+	 * The hardest score
+	 */
+	public static final int MAX_SCORE = 99;
+
+	// Where the medium and hard bands start, so that the winnable shuffled
+	// deals split roughly into thirds
+	private static final int MEDIUM_SCORE = 47;
+	private static final int HARD_SCORE = 62;
+
+	private final int score;
+	private final long nodes;
+	private final double branching;
+	private final int winningPlayouts;
+	private final int playouts;
+	private final int forcedDepth;
+
+	public DifficultyRating(int score, long nodes, double branching,
+			int winningPlayouts, int playouts, int forcedDepth) {
+		this.score = score;
+		this.nodes = nodes;
+		this.branching = branching;
+		this.winningPlayouts = winningPlayouts;
+		this.playouts = playouts;
+		this.forcedDepth = forcedDepth;
+	}
+
+	/**
+	 * Returns the rating from 0, the easiest, to MAX_SCORE
+	 *
+	 * @return
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	public Band getBand() {
+		return Band.forScore(score);
+	}
+
+	/**
+	 * Returns the positions the solver searched to find a winning line
+	 *
+	 * @return
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the average number of moves there were to choose from along the
+	 * winning line
+	 *
+	 * @return
+	 */
+	public double getBranching() {
+		return branching;
+	}
+
+	/**
+	 * Returns how many of the random playouts cleared the board, a stand in
+	 * for how many winning lines there are
+	 *
+	 * @return
+	 */
+	public int getWinningPlayouts() {
+		return winningPlayouts;
+	}
+
+	public int getPlayouts() {
+		return playouts;
+	}
+
+	/**
+	 * Returns the longest run of moves along the winning line where there was
+	 * only one move to make
+	 *
+	 * @return
+	 */
+	public int getForcedDepth() {
+		return forcedDepth;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s (%d): %d positions searched, %.1f moves a turn,"
+				+ " %d/%d playouts won, %d forced in a row", getBand(), score,
+				nodes, branching, winningPlayouts, playouts, forcedDepth);
+	}
+}
@@ -0,0 +1,107 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * The difficulty ratings SeedScanner writes for the winnable games, one byte
+ * per game number, memory mapped like WinnableSeeds. A byte holds the score
+ * plus one, 0 for a game that wasn't rated and UNRATABLE for one the rater
+ * couldn't rate in time
+ */
+public class DifficultyTable {
+
+	/**
+	 * The table's file name
+	 */
+	public static final String RATINGS_FILE = "difficulty.bin";
+
+	/**
+	 * The byte for a winnable game the rater gave up on, so it isn't rated
+	 * again on every scan
+	 */
+	public static final byte UNRATABLE = (byte) 0xff;
+
+	// Random guesses to make before going through the table for a game
+	private static final int MAX_GUESSES = 256;
+
+	private final MappedByteBuffer ratings;
+
+	private DifficultyTable(MappedByteBuffer ratings) {
+		this.ratings = ratings;
+	}
+
+	/**
+	 * Maps the table in the given directory
+	 *
+	 * @param directory
+	 * @return the table, or null if there isn't one that can be read
+	 */
+	public static DifficultyTable open(File directory) {
+		File file = new File(directory, RATINGS_FILE);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			if (input.length() != WinnableSeeds.SEED_COUNT) {
+				System.err.println(file + " is " + input.length() + " bytes, not "
+						+ WinnableSeeds.SEED_COUNT);
+				return null;
+			}
+			return new DifficultyTable(input.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, WinnableSeeds.SEED_COUNT));
+		} catch (IOException e) {
+			System.err.println("Couldn't map " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a game's score
+	 *
+	 * @param seed
+	 * @return the score, or -1 if the game wasn't rated, couldn't be or is
+	 * out of range
+	 */
+	public int getScore(long seed) {
+		if (seed < 0 || seed >= WinnableSeeds.SEED_COUNT) {
+			return -1;
+		}
+		byte rating = ratings.get((int) seed);
+		return rating == UNRATABLE ? -1 : (rating & 0xff) - 1;
+	}
+
+	/**
+	 * Picks a rated game in a band at random. Each band holds about a third
+	 * of the games, so random guesses nearly always find one
+	 *
+	 * @param band
+	 * @param random
+	 * @return the game number, or -1 if no game in the table is in the band
+	 */
+	public long pick(DifficultyRating.Band band, Random random) {
+		for (int i = 0; i < MAX_GUESSES; i++) {
+			int seed = random.nextInt(WinnableSeeds.SEED_COUNT);
+			if (inBand(seed, band)) {
+				return seed;
+			}
+		}
+
+		// A partial scan, so go through from a random starting point
+		int start = random.nextInt(WinnableSeeds.SEED_COUNT);
+		for (int i = 0; i < WinnableSeeds.SEED_COUNT; i++) {
+			int seed = (start + i) % WinnableSeeds.SEED_COUNT;
+			if (inBand(seed, band)) {
+				return seed;
+			}
+		}
+		return -1;
+	}
+
+	private boolean inBand(int seed, DifficultyRating.Band band) {
+		int score = getScore(seed);
+		return score >= 0 && band.distance(score) == 0;
+	}
+}
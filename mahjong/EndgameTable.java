@@ -0,0 +1,168 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Known outcomes of small endgames, precomputed by EndgameTableBuilder and
+ * memory mapped from disk. Whether an endgame can be won only depends on
+ * which positions are still occupied and which of those share a match group,
+ * not on the groups themselves, so every endgame is keyed by a canonical form
+ * that numbers the groups in the order they turn up. The same endgame from
+ * another deal, with other faces, gets the same key.
+ *
+ * The file is an open addressing hash table of longs, a power of two of them.
+ * Each holds a 62 bit hash of the canonical form with the outcome in the low
+ * two bits, and 0 marks an empty slot
+ */
+public class EndgameTable {
+
+	/**
+	 * The most tiles an endgame in the table can have
+	 */
+	public static final int MAX_TILES = 20;
+
+	/**
+	 * The table's file name
+	 */
+	public static final String TABLE_FILE = "endgame.tb";
+
+	/**
+	 * Outcomes as they are stored in a slot's low bits
+	 */
+	public static final int UNKNOWN = 0;
+	public static final int WIN = 1;
+	public static final int LOSS = 2;
+
+	private static final long OUTCOME_MASK = 3;
+
+	private final LongBuffer slots;
+	private final int mask;
+
+	private EndgameTable(LongBuffer slots) {
+		this.slots = slots;
+		mask = slots.capacity() - 1;
+	}
+
+	/**
+	 * Maps the table in the given directory
+	 *
+	 * @param directory
+	 * @return the table, or null if there isn't one that can be read
+	 */
+	public static EndgameTable open(File directory) {
+		File file = new File(directory, TABLE_FILE);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			long slots = input.length() / 8;
+			if (slots == 0 || slots > Integer.MAX_VALUE || Long.bitCount(slots) != 1
+					|| input.length() % 8 != 0) {
+				System.err.println(file + " is " + input.length()
+						+ " bytes, not a power of two longs");
+				return null;
+			}
+			return new EndgameTable(input.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, input.length()).asLongBuffer());
+		} catch (IOException e) {
+			System.err.println("Couldn't map " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Looks up an endgame
+	 *
+	 * @param key from key(), not 0
+	 * @return WIN, LOSS or UNKNOWN
+	 */
+	public int lookup(long key) {
+		// A damaged file may have no empty slot to stop at, so the probe goes
+		// round the table at most once
+		int slot = (int) (key >>> 2) & mask;
+		for (int probes = 0; probes < slots.capacity(); probes++, slot = (slot + 1) & mask) {
+			long entry = slots.get(slot);
+			if (entry == 0) {
+				return UNKNOWN;
+			}
+			if ((entry & ~OUTCOME_MASK) == key) {
+				return (int) (entry & OUTCOME_MASK);
+			}
+		}
+		return UNKNOWN;
+	}
+
+	/**
+	 * Looks up the engine's current position
+	 *
+	 * @param engine
+	 * @param labels scratch space for TileFace.GROUP_COUNT ints
+	 * @param board scratch space for Bitboard.WORDS longs
+	 * @return WIN, LOSS or UNKNOWN, which is all a bigger position can be
+	 */
+	public int lookup(MahjongEngine engine, int[] labels, long[] board) {
+		long key = key(engine, labels, board);
+		return key == 0 ? UNKNOWN : lookup(key);
+	}
+
+	/**
+	 * Works out the canonical key of the engine's current position, without
+	 * allocating. The tiles are taken in bitboard order when the layout has
+	 * one, which only visits the occupied positions
+	 *
+	 * @param engine
+	 * @param labels scratch space for TileFace.GROUP_COUNT ints
+	 * @param board scratch space for Bitboard.WORDS longs
+	 * @return the key, with the low two bits clear and never 0, or 0 if there
+	 * are too many tiles on the board
+	 */
+	public static long key(MahjongEngine engine, int[] labels, long[] board) {
+		if (engine.getRemainingCount() > MAX_TILES) {
+			return 0;
+		}
+		for (int group = 0; group < TileFace.GROUP_COUNT; group++) {
+			labels[group] = -1;
+		}
+		int next = 0;
+		long hash = 0x6a09e667f3bcc908L;
+		if (engine.getBoard(board)) {
+			Bitboard bitboard = engine.getLayout().getBitboard();
+			for (int word = 0; word < Bitboard.WORDS; word++) {
+				for (long bits = board[word]; bits != 0; bits &= bits - 1) {
+					int position = bitboard.getPosition(word * Long.SIZE
+							+ Long.numberOfTrailingZeros(bits));
+					int group = engine.getMatchGroupAt(position);
+					if (labels[group] < 0) {
+						labels[group] = next++;
+					}
+					hash = mix(hash, position, labels[group]);
+				}
+			}
+		} else {
+			int size = engine.getLayout().size();
+			for (int position = 0; position < size; position++) {
+				if (!engine.isOccupied(position)) {
+					continue;
+				}
+				int group = engine.getMatchGroupAt(position);
+				if (labels[group] < 0) {
+					labels[group] = next++;
+				}
+				hash = mix(hash, position, labels[group]);
+			}
+		}
+		// Finish the mix so every bit depends on every position
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash &= ~OUTCOME_MASK;
+		return hash == 0 ? OUTCOME_MASK + 1 : hash;
+	}
+
+	private static long mix(long hash, int position, int label) {
+		hash = (hash ^ ((long) position << 5 | label)) * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+}
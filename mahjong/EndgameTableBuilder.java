@@ -0,0 +1,280 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fills an EndgameTable by solving numbered games on every core and keeping
+ * every endgame the solvers settle along the way. A solver records each small
+ * position it proves lost, and every small position on a winning line it
+ * finds. Solving a whole game rarely goes far down the lines that lose, so
+ * each game is also played out at random a number of times down to endgame
+ * size, and those endgames are solved too, the way a player might reach them.
+ *
+ * The table is built in memory and then written out, on top of what an
+ * earlier run left in the same file, so runs over more games add to it
+ */
+public class EndgameTableBuilder {
+
+	/**
+	 * The default table size, as a power of two. 2^21 slots take 16MB
+	 */
+	public static final int DEFAULT_BITS = 21;
+
+	// Games per unit of work
+	private static final int CHUNK_SIZE = 16;
+
+	private static final long DEFAULT_TIME_LIMIT = 2000;
+
+	// Random endgames to solve for each game
+	private static final int DEFAULT_PLAYOUTS = 32;
+
+	private final AtomicLongArray slots;
+	private final int mask;
+	// Filling the table past this would make lookups slow
+	private final int capacity;
+	private final AtomicInteger size = new AtomicInteger();
+
+	/**
+	 * Creates an empty table of 2^bits slots
+	 *
+	 * @param bits
+	 */
+	public EndgameTableBuilder(int bits) {
+		if (bits < 1 || bits > 30) {
+			throw new IllegalArgumentException("Table bits must be from 1 to 30, not " + bits);
+		}
+		slots = new AtomicLongArray(1 << bits);
+		mask = (1 << bits) - 1;
+		capacity = (1 << bits) / 4 * 3;
+	}
+
+	/**
+	 * Returns the number of endgames in the table
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * Records the outcome of the engine's current position, if it's small
+	 * enough. Any number of threads can record at once
+	 *
+	 * @param engine
+	 * @param outcome EndgameTable.WIN or EndgameTable.LOSS
+	 * @param labels scratch space for TileFace.GROUP_COUNT ints
+	 * @param board scratch space for Bitboard.WORDS longs
+	 */
+	public void record(MahjongEngine engine, int outcome, int[] labels, long[] board) {
+		long key = EndgameTable.key(engine, labels, board);
+		if (key != 0) {
+			record(key, outcome);
+		}
+	}
+
+	/**
+	 * Records an endgame's outcome by its key
+	 *
+	 * @param key
+	 * @param outcome
+	 * @return false if the table is full
+	 */
+	public boolean record(long key, int outcome) {
+		long entry = key | outcome;
+		for (int slot = (int) (key >>> 2) & mask; ; slot = (slot + 1) & mask) {
+			long current = slots.get(slot);
+			if (current == 0) {
+				if (size.get() >= capacity) {
+					return false;
+				}
+				if (slots.compareAndSet(slot, 0, entry)) {
+					size.incrementAndGet();
+					return true;
+				}
+				// Someone else took the slot, so look at it again
+				current = slots.get(slot);
+			}
+			if ((current & ~3L) == key) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Adds the endgames from an earlier table file, if there is one of the
+	 * same size
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void load(File file) throws IOException {
+		if (!file.isFile()) {
+			return;
+		}
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			if (input.length() != slots.length() * 8L) {
+				System.err.println("Not adding to " + file + ", it's a different size");
+				return;
+			}
+			LongBuffer buffer = input.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, input.length()).asLongBuffer();
+			for (int i = 0; i < slots.length(); i++) {
+				long entry = buffer.get(i);
+				if (entry != 0) {
+					record(entry & ~3L, (int) (entry & 3));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the table to a file
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+			output.setLength(slots.length() * 8L);
+			LongBuffer buffer = output.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, slots.length() * 8L).asLongBuffer();
+			for (int i = 0; i < slots.length(); i++) {
+				buffer.put(i, slots.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Solves the games from first to last, inclusive, and some random
+	 * endgames from each, recording what they settle
+	 *
+	 * @param first
+	 * @param last
+	 * @param threads
+	 * @param timeLimitMillis for each game
+	 * @param playouts random endgames to solve for each game
+	 * @throws InterruptedException
+	 */
+	public void harvest(final long first, final long last, int threads,
+			final long timeLimitMillis, final int playouts) throws InterruptedException {
+		final AtomicInteger nextChunk = new AtomicInteger();
+		final AtomicInteger solved = new AtomicInteger();
+		final long start = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Solver solver = new Solver();
+					solver.setHarvester(EndgameTableBuilder.this);
+					MahjongEngine engine = new MahjongEngine();
+					int[] moves = new int[MahjongEngine.MAX_MOVES * 2];
+					long chunk;
+					while ((chunk = first + (long) nextChunk.getAndIncrement() * CHUNK_SIZE) <= last) {
+						long end = Math.min(last, chunk + CHUNK_SIZE - 1);
+						for (long game = chunk; game <= end; game++) {
+							engine.deal(game);
+							solver.solve(engine, timeLimitMillis);
+							Random random = new Random(game);
+							for (int playout = 0; playout < playouts; playout++) {
+								if (playDown(engine, random, moves)) {
+									solver.solve(engine, timeLimitMillis);
+								}
+								while (engine.getRemovedCount() > 0) {
+									engine.takeBack();
+								}
+							}
+							solved.incrementAndGet();
+						}
+						report(solved.get(), start);
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+	}
+
+	/**
+	 * Makes random moves until the position is small enough for the table
+	 *
+	 * @param engine
+	 * @param random
+	 * @param moves scratch space
+	 * @return false if the game got stuck first
+	 */
+	private static boolean playDown(MahjongEngine engine, Random random, int[] moves) {
+		while (engine.getRemainingCount() > EndgameTable.MAX_TILES) {
+			int count = engine.getMoves(moves);
+			if (count == 0) {
+				return false;
+			}
+			int move = random.nextInt(count);
+			engine.play(moves[move * 2], moves[move * 2 + 1]);
+		}
+		return true;
+	}
+
+	private synchronized void report(int solved, long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%d games: %d endgames, %.1f games/s",
+				solved, size(), solved / seconds));
+	}
+
+	/**
+	 * Builds or adds to a table. The arguments are all optional: -d and a
+	 * directory, -bits and the table size as a power of two, -t and a time
+	 * limit per game in milliseconds, -p and the random endgames per game,
+	 * -threads and a thread count, and the first and last game numbers
+	 *
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		File directory = new File(WinnableSeeds.DEFAULT_DIRECTORY);
+		int bits = DEFAULT_BITS;
+		long timeLimit = DEFAULT_TIME_LIMIT;
+		int playouts = DEFAULT_PLAYOUTS;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long first = 0;
+		long last = 999;
+		int numbers = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-d") && i + 1 < args.length) {
+				directory = new File(args[++i]);
+			} else if (args[i].equals("-bits") && i + 1 < args.length) {
+				bits = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-t") && i + 1 < args.length) {
+				timeLimit = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-p") && i + 1 < args.length) {
+				playouts = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (numbers++ == 0) {
+				first = Long.parseLong(args[i]);
+			} else {
+				last = Long.parseLong(args[i]);
+			}
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create " + directory);
+		}
+
+		File file = new File(directory, EndgameTable.TABLE_FILE);
+		EndgameTableBuilder builder = new EndgameTableBuilder(bits);
+		builder.load(file);
+		System.out.println("Starting with " + builder.size() + " endgames");
+		builder.harvest(first, last, threads, timeLimit, playouts);
+		builder.write(file);
+		System.out.println("Wrote " + builder.size() + " endgames to " + file);
+	}
+}
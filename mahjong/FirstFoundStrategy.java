@@ -0,0 +1,15 @@
+/**
+ * Makes the first move it finds, as the Hint menu item shows
+ */
+public class FirstFoundStrategy implements Strategy {
+
+	@Override
+	public String getName() {
+		return "first-found";
+	}
+
+	@Override
+	public int chooseMove(MahjongEngine engine, int[] moves, int count) {
+		return 0;
+	}
+}
@@ -1,40 +1,58 @@
+import java.awt.Color;
 import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.EmptyStackException;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 import java.util.Stack;
 import java.util.Timer;
 import java.util.TimerTask;
-import javax.swing.ImageIcon;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.JLabel;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
+import javax.swing.SwingWorker;
 
 public class GamePanel extends JPanel implements MouseListener {
 
 	private static final long serialVersionUID = -3289466134158240778L;
-	private static Random random;
-	private Map<String, Tile> board = new HashMap<>();
+	private MahjongEngine engine = new MahjongEngine();
+	private Tile[] tiles = new Tile[engine.getLayout().size()];
 	private Stack<Tile> removedTiles = new Stack<>();
 	private Stack<Tile> restoredTiles = new Stack<>();
-	private String[] backgrounds = {"dragon.png", "dragon_bg.png", "blue-dragon.jpg",
+	protected static final String[] BACKGROUNDS = {"dragon.png", "dragon_bg.png", "blue-dragon.jpg",
 		"red-gold-dragon.jpg", "red-silver-dragon.jpg",
 		"yin-yang-dragon.jpg", "yin-yang-white-dragon.jpg"};
-	private String backgroundString;
+	private String backgroundName;
+	// The background scaled for the panel, and the size it was scaled for
+	private Image background = null;
+	private int backgroundWidth = -1;
+	private int backgroundHeight = -1;
+	private final Runnable backgroundReady = new Runnable() {
+		@Override
+		public void run() {
+			repaint();
+		}
+	};
 	protected long gameNumber;
+	// Whether the game was built by ReverseDealer, which deals a different
+	// game for the same number
+	protected boolean built;
 	private Tile selectedTile;
 	private JPanel removedPanel = null;
 	private boolean init = true;
@@ -42,6 +60,35 @@ public class GamePanel extends JPanel implements MouseListener {
 	private PlayClip playClip = new PlayClip("sounds/stone-scraping.wav");
 	private Fireworks fireworks = null;
 	private boolean initHint = false;
+	private MoveAdvisor advisor = new MoveAdvisor();
+	private long hintBudgetMillis = MoveAdvisor.DEFAULT_BUDGET_MILLIS;
+	private SwingWorker<int[], Void> hintWorker = null;
+	// Set to stop the best move search the hint worker is running
+	private AtomicBoolean hintCancel = null;
+	private MonteCarloEvaluator evaluator = null;
+	private SwingWorker<WinEstimate, Void> estimateWorker = null;
+	private JLabel winChance = null;
+	private SolvabilityMonitor monitor = null;
+
+	// Auto-finish: the monitor's winning line for the current position, and
+	// the timer playing it out
+	private static final int AUTO_FINISH_TILES = 36;
+	private static final int FINISH_DELAY = 60;
+	private static final int FINISH_PAIRS_PER_TICK = 2;
+	private int[] winningLine = null;
+	private boolean autoFinishOffered = false;
+	private javax.swing.Timer finishTimer = null;
+	private Reshuffler reshuffler = new Reshuffler();
+	private SwingWorker<SolverResult, Void> shuffleWorker = null;
+
+	// Single canvas rendering: the tiles aren't added as components but are
+	// painted straight from the board in paint order, the bottom tile first,
+	// only where the panel needs it, and clicks are matched to tiles here
+	private boolean singleCanvas = false;
+	private int[] paintOrder;
+	private final Point location = new Point();
+	// Which tiles are under which part of the board, built for its size
+	private HitGrid hitGrid = null;
 
 	public GamePanel(int width, int height) {
 		this(width, height, true);
@@ -57,12 +104,27 @@ public class GamePanel extends JPanel implements MouseListener {
 
 	public GamePanel(int width, int height, boolean drawRound,
 			Long randomNumber) {
+		this(width, height, drawRound, randomNumber, false);
+	}
+
+	/**
+	 * Creates a game panel
+	 *
+	 * @param width
+	 * @param height
+	 * @param drawRound
+	 * @param randomNumber the game number, or null for one based on the time
+	 * @param built whether to build a deal that can be won with ReverseDealer
+	 * rather than shuffling the tiles
+	 */
+	public GamePanel(int width, int height, boolean drawRound,
+			Long randomNumber, boolean built) {
 		if (randomNumber == null) {
 			randomNumber = new Date().getTime() % 1000000;
 		}
 		gameNumber = randomNumber;
-		random = new Random(randomNumber);
-		initialize(width, height, drawRound);
+		this.built = built;
+		initialize(width, height, drawRound, new Random(randomNumber));
 	}
 
 	protected boolean getSound() {
@@ -72,26 +134,190 @@ public class GamePanel extends JPanel implements MouseListener {
 		this.sound = sound;
 	}
 
+	/**
+	 * Sets the monitor to tell about every move, and has it check the
+	 * current position
+	 *
+	 * @param monitor can be null
+	 */
+	protected void setMonitor(SolvabilityMonitor monitor) {
+		this.monitor = monitor;
+		positionChanged();
+	}
+
+	/**
+	 * Sets the endgame table the best move hint looks small positions up in
+	 *
+	 * @param endgames can be null
+	 */
+	protected void setEndgameTable(EndgameTable endgames) {
+		advisor.setEndgameTable(endgames);
+	}
+
+	/**
+	 * Sets the cache of solved positions the best move hint uses
+	 *
+	 * @param cache can be null
+	 */
+	protected void setResultCache(SolverCache cache) {
+		advisor.setResultCache(cache);
+	}
+
+	/**
+	 * Sets the evaluator that estimates the chance of winning with a hinted
+	 * move
+	 *
+	 * @param evaluator can be null
+	 */
+	protected void setEvaluator(MonteCarloEvaluator evaluator) {
+		this.evaluator = evaluator;
+	}
+
+	/**
+	 * Has the monitor, if there is one, check the new position
+	 */
+	private void positionChanged() {
+		winningLine = null;
+		if (monitor != null) {
+			monitor.positionChanged(engine);
+		}
+	}
+
 	protected int getRemovedTileCount() {
 		return removedTiles.size();
 	}
 
+	protected int getRemainingTileCount() {
+		return engine.getRemainingCount();
+	}
+
 	@Override
 	protected void paintComponent(Graphics g) {
 		super.paintComponent(g);
 
-		if (backgroundString != null) {
-			ImageIcon image = new ImageIcon(getClass().getResource(backgroundString));
-			int xDiff = getWidth() - image.getIconWidth();
-			int yDiff = getHeight() - image.getIconHeight();
-			if (xDiff < 0 || yDiff < 0) {
-				int diff = xDiff - yDiff;
-				image = new ImageIcon(image.getImage().getScaledInstance(diff >= 0 ? getWidth() : -1, diff < 0 ? getHeight() : -1, Image.SCALE_DEFAULT));
+		if (backgroundName != null) {
+			if (backgroundWidth != getWidth() || backgroundHeight != getHeight()) {
+				// Until it's been decoded for this size, the last one is drawn
+				BackgroundCache cache = BackgroundCache.getInstance();
+				BufferedImage image = cache.request(backgroundName, getWidth(), getHeight(),
+						backgroundReady);
+				if (image != null) {
+					background = image;
+					backgroundWidth = getWidth();
+					backgroundHeight = getHeight();
+					// Have the next game's background ready, whichever it is
+					cache.prefetch(BACKGROUNDS, getWidth(), getHeight());
+				}
+			}
+			if (background != null) {
+				g.drawImage(background, getWidth() / 2 - background.getWidth(this) / 2, getHeight() / 2 - background.getHeight(this) / 2, this);
 			}
-			g.drawImage(image.getImage(), getWidth() / 2 - image.getIconWidth() / 2, getHeight() / 2 - image.getIconHeight() / 2, this);
 		}
 
-		redraw();
+		if (singleCanvas) {
+			paintTiles(g);
+		} else {
+			redraw();
+		}
+	}
+
+	/**
+	 * Paints the tiles on the board that are inside the clip, bottom first
+	 *
+	 * @param g
+	 */
+	private void paintTiles(Graphics g) {
+		Rectangle clip = g.getClipBounds();
+		Layout layout = engine.getLayout();
+		for (int position : paintOrder) {
+			Tile tile = tiles[position];
+			if (tile == null) {
+				continue;
+			}
+			Tile.locate(layout, position, getWidth(), getHeight(), location);
+			if (clip != null && !clip.intersects(location.x, location.y,
+					TileAtlas.SPRITE_WIDTH, TileAtlas.SPRITE_HEIGHT)) {
+				continue;
+			}
+			g.translate(location.x, location.y);
+			tile.paintTile(g);
+			g.translate(-location.x, -location.y);
+		}
+	}
+
+	/**
+	 * Switches between painting the tiles from the board on the panel itself
+	 * and adding them to it as components
+	 *
+	 * @param singleCanvas
+	 */
+	protected void setSingleCanvas(boolean singleCanvas) {
+		if (this.singleCanvas == singleCanvas) {
+			return;
+		}
+		this.singleCanvas = singleCanvas;
+		// Clicks on the canvas are matched to tiles by the hit grid
+		listenToTiles(!singleCanvas);
+		if (singleCanvas) {
+			for (Tile tile : tiles) {
+				if (tile != null) {
+					remove(tile);
+				}
+			}
+		} else {
+			// Add every tile back on the next paint
+			init = true;
+		}
+		repaint();
+	}
+
+	protected boolean isSingleCanvas() {
+		return singleCanvas;
+	}
+
+	/**
+	 * Works out where a tile on the board is drawn
+	 *
+	 * @param tile
+	 * @return
+	 */
+	private Rectangle getTileBounds(Tile tile) {
+		if (!singleCanvas) {
+			return tile.getBounds();
+		}
+		Point point = new Point();
+		Tile.locate(engine.getLayout(), tile.position, getWidth(), getHeight(), point);
+		return new Rectangle(point.x, point.y, TileAtlas.SPRITE_WIDTH, TileAtlas.SPRITE_HEIGHT);
+	}
+
+	/**
+	 * Finds the top tile drawn under a point, when painting on a single
+	 * canvas. The hit grid is built again if the board has changed size
+	 *
+	 * @param x
+	 * @param y
+	 * @return the tile, or null if there isn't one there
+	 */
+	private Tile getTileAt(int x, int y) {
+		if (hitGrid == null || !hitGrid.fits(engine.getLayout(), getWidth(), getHeight())) {
+			hitGrid = new HitGrid(engine.getLayout(), paintOrder, getWidth(), getHeight());
+		}
+		int position = hitGrid.pick(x, y, engine);
+		return position < 0 ? null : tiles[position];
+	}
+
+	/**
+	 * Repaints a tile that has changed. On a single canvas that's only where
+	 * the tile is, otherwise it's the whole board
+	 *
+	 * @param tile
+	 */
+	private void repaintTile(Tile tile) {
+		if (singleCanvas) {
+			repaint(getTileBounds(tile));
+		} else {
+			repaint();
+		}
 	}
 
 	/**
@@ -101,238 +327,88 @@ public class GamePanel extends JPanel implements MouseListener {
 	 * @param width the integer width of the game board
 	 * @param height the integer height of the game board
 	 * @param drawRound a boolean indicating whether to draw round corners
+	 * @param random the game's random, which picks the background and deals
 	 */
-	private void initialize(int width, int height, boolean drawRound) {
+	private void initialize(int width, int height, boolean drawRound, Random random) {
 		setLayout(null);
 		setSize(width, height);
 
-		int number = random.nextInt(backgrounds.length);
-		backgroundString = "images/" + backgrounds[number];
+		int number = random.nextInt(BACKGROUNDS.length);
+		backgroundName = BACKGROUNDS[number];
 
-		List<Tile> deck = initializeDeck(drawRound);
-
-		// Start at the top middle tile
-		int xPos = 0;
-		int yPos = 0;
-		int zPos = 0;
+		if (built) {
+			engine.deal(new ReverseDealer(engine.getLayout()).deal(random));
+		} else {
+			engine.deal(random);
+		}
+		Layout layout = engine.getLayout();
 
 		// Every tile gets set to the correct size, then we set the position
 		// and put the tile into our board
-		for (Tile tile : deck) {
-			tile.setSize(Tile.WIDTH, Tile.HEIGHT);
-			tile.xPos = xPos;
-			tile.yPos = yPos;
-			tile.zPos = zPos;
-
-			tile.addMouseListener(this);
-			board.put(getKey(xPos, yPos, zPos), tile);
+		for (int position = 0; position < layout.size(); position++) {
+			tiles[position] = createTile(position, drawRound);
+		}
 
-			int[] newPositions = getNewPositions(xPos, yPos, zPos);
-			xPos = newPositions[0];
-			yPos = newPositions[1];
-			zPos = newPositions[2];
+		// The order redraw() stacks the components in, which puts the first
+		// tile in sorted order on top, so that one is painted last
+		List<Tile> deck = new ArrayList<>();
+		Collections.addAll(deck, tiles);
+		Collections.sort(deck);
+		paintOrder = new int[deck.size()];
+		for (int i = 0; i < paintOrder.length; i++) {
+			paintOrder[i] = deck.get(paintOrder.length - 1 - i).position;
 		}
 
 		addMouseListener(this);
 	}
 
 	/**
-	 * This method handles the logic behind adding the coordinates for tiles,
-	 * for example the transition from layer to layer, and the three special
-	 * case tiles
-	 *
-	 * @param currentXPos
-	 * @param currentYPos
-	 * @param currentZPos
-	 * @return a three element array, with 0 being the new xPos, 1 being the new
-	 * yPos, and 2 being the new zPos
-	 */
-	private int[] getNewPositions(int currentXPos, int currentYPos, int currentZPos) {
-		int maxX;
-		int maxY;
-
-		switch (currentZPos) {
-			case 0:
-				maxX = 0;
-				maxY = 0;
-				break;
-			case 1:
-				maxX = 1;
-				maxY = 1;
-				break;
-			case 2:
-				maxX = 2;
-				maxY = 2;
-				break;
-			case 3:
-				maxX = 3;
-				maxY = 3;
-				break;
-			case 4:
-				maxY = 4;
-				switch (Math.abs(currentYPos)) {
-					case 1:
-					// Intentional fall-through, both have max as 6
-					case 4:
-						maxX = 6;
-						break;
-					case 2:
-						maxX = 5;
-						break;
-					case 3:
-						maxX = 4;
-						break;
-					default:
-						maxX = 0;
-				}
-				break;
-			default:
-				maxX = 0;
-				maxY = 0;
-				break;
-		}
-
-		int absXPos = Math.abs(currentXPos);
-		int absYPos = Math.abs(currentYPos);
-
-		if (currentZPos == 0) {
-			currentXPos = 1;
-			currentYPos = 1;
-			currentZPos = 1;
-		} // For the middle three layers, it's just a square
-		else {
-			// Adds or subtracts one from the current x if we haven't reached
-			// the end of the row
-			if (currentYPos != 0 && absXPos < maxX) {
-				// This is either 1 or -1, depending on which direction we are
-				// going already
-				currentXPos += currentXPos / absXPos;
-			} // Otherwise, we have to decide whether to add/subtract one for y,
-			// or whether the y side is done and we need to start at the next
-			// center tile
-			else if (currentYPos != 0 && absYPos < maxY) {
-				currentYPos += currentYPos / absYPos;
-				currentXPos = currentXPos / absXPos;
-			} else if (currentXPos > 0 && currentYPos > 0) {
-				currentXPos = 1;
-				currentYPos = -1;
-			} else if (currentXPos > 0 && currentYPos < 0) {
-				currentXPos = -1;
-				currentYPos = -1;
-			} else if (currentXPos < 0 && currentYPos < 0) {
-				currentXPos = -1;
-				currentYPos = 1;
-			} else if (currentXPos < 0 && currentYPos > 0 && currentZPos <= 4) {
-				currentXPos = 1;
-				currentYPos = 1;
-				currentZPos++;
-			} // The three special case tiles are inserted here
-			else if (currentZPos == 4 && currentYPos == 0) {
-				switch (currentXPos) {
-					case -7:
-						currentXPos = 7;
-						break;
-					case 7:
-						currentXPos = 8;
-						break;
-					default:
-						break;
-				}
-			}
-
-			// This catches us if we started going one layer too deep
-			if (currentZPos == 5) {
-				currentXPos = -7;
-				currentYPos = 0;
-				currentZPos = 4;
-			}
+	 * Creates the tile for the face the engine has at a position
+	 *
+	 * @param position
+	 * @param drawRound
+	 * @return
+	 */
+	private Tile createTile(int position, boolean drawRound) {
+		Tile tile = Tile.create(TileFace.get(engine.getFace(position)));
+		tile.drawRound = drawRound;
+		tile.setSize(Tile.WIDTH, Tile.HEIGHT);
+		tile.layout = engine.getLayout();
+		tile.position = position;
+
+		if (!singleCanvas) {
+			tile.addMouseListener(this);
 		}
-
-		int[] positions = new int[]{currentXPos, currentYPos, currentZPos};
-		return positions;
+		return tile;
 	}
 
 	/**
-	 * Adds all of the tiles to the deck, and 'shuffles' them
+	 * Has every tile of the game, on the board or off it, send its clicks
+	 * here or stop sending them, for the tiles being components or not
 	 *
-	 * @param drawRound a boolean indicating whether to draw rounded corners
-	 * @return
+	 * @param listen
 	 */
-	private List<Tile> initializeDeck(Boolean drawRound) {
-		List<Tile> deck = new ArrayList<>();
-
-		for (int i = 0; i < 4; i++) {
-
-			// Chinese numbers
-			deck.add(new CharacterTile('1'));
-			deck.add(new CharacterTile('2'));
-			deck.add(new CharacterTile('3'));
-			deck.add(new CharacterTile('4'));
-			deck.add(new CharacterTile('5'));
-			deck.add(new CharacterTile('6'));
-			deck.add(new CharacterTile('7'));
-			deck.add(new CharacterTile('8'));
-			deck.add(new CharacterTile('9'));
-
-			// Wind tiles
-			deck.add(new CharacterTile('N'));
-			deck.add(new CharacterTile('S'));
-			deck.add(new CharacterTile('E'));
-			deck.add(new CharacterTile('W'));
-
-			// Dragon tiles
-			deck.add(new CharacterTile('C'));
-			deck.add(new CharacterTile('F'));
-			deck.add(new WhiteDragonTile());
-
-			// Bamboo tiles, including the bamboo 1 picture
-			deck.add(new Bamboo1Tile());
-			deck.add(new BambooTile(2));
-			deck.add(new BambooTile(3));
-			deck.add(new BambooTile(4));
-			deck.add(new BambooTile(5));
-			deck.add(new BambooTile(6));
-			deck.add(new BambooTile(7));
-			deck.add(new BambooTile(8));
-			deck.add(new BambooTile(9));
-
-			// Circle tiles, including the 'pancake'
-			deck.add(new CircleTile(1));
-			deck.add(new CircleTile(2));
-			deck.add(new CircleTile(3));
-			deck.add(new CircleTile(4));
-			deck.add(new CircleTile(5));
-			deck.add(new CircleTile(6));
-			deck.add(new CircleTile(7));
-			deck.add(new CircleTile(8));
-			deck.add(new CircleTile(9));
-
-		}
-
-		deck.add(new FlowerTile("Chrysanthemum"));
-		deck.add(new FlowerTile("Orchid"));
-		deck.add(new FlowerTile("Plum"));
-		deck.add(new FlowerTile("Bamboo"));
-		deck.add(new SeasonTile("Spring"));
-		deck.add(new SeasonTile("Summer"));
-		deck.add(new SeasonTile("Fall"));
-		deck.add(new SeasonTile("Winter"));
-
-		Collections.shuffle(deck, random);
-
-		// We're telling the tiles how to draw here, for simplicity
-		if (drawRound != null) {
-			for (Tile tile : deck) {
-				tile.drawRound = drawRound;
-			}
-		}
-
-		return deck;
+	private void listenToTiles(boolean listen) {
+		List<Tile> all = new ArrayList<>(removedTiles);
+		all.addAll(restoredTiles);
+		for (Tile tile : tiles) {
+			if (tile != null) {
+				all.add(tile);
+			}
+		}
+		for (Tile tile : all) {
+			tile.removeMouseListener(this);
+			if (listen) {
+				tile.addMouseListener(this);
+			}
+		}
 	}
 
 	protected void toggleRoundedCorners() {
-		for (Tile tile : board.values()) {
-			tile.drawRound = !tile.drawRound;
+		for (Tile tile : tiles) {
+			if (tile != null) {
+				tile.drawRound = !tile.drawRound;
+			}
 		}
 		Stack<Tile> tempStack = removedTiles;
 		for (Tile tile : tempStack) {
@@ -343,8 +419,8 @@ public class GamePanel extends JPanel implements MouseListener {
 	}
 
 	protected boolean hasRoundedCorners() {
-		if (board.values() != null && board.values().size() > 0) {
-			for (Tile tile : board.values()) {
+		for (Tile tile : tiles) {
+			if (tile != null) {
 				return tile.drawRound;
 			}
 		}
@@ -356,8 +432,15 @@ public class GamePanel extends JPanel implements MouseListener {
 	 * Draws the tiles on the board
 	 */
 	private void redraw() {
+		if (singleCanvas) {
+			return;
+		}
 		List<Tile> deck = new ArrayList<>();
-		deck.addAll(board.values());
+		for (Tile tile : tiles) {
+			if (tile != null) {
+				deck.add(tile);
+			}
+		}
 		Collections.sort(deck);
 
 		for (Tile tile : deck) {
@@ -380,20 +463,6 @@ public class GamePanel extends JPanel implements MouseListener {
 		init = false;
 	}
 
-	/**
-	 * Returns the delimited key for the given x, y, and z values This function
-	 * is intended to help prevent typing or coding errors
-	 *
-	 * @param xPos
-	 * @param yPos
-	 * @param zPos
-	 * @return a string in the format required for the board (current
-	 * <xPos>_<yPos>_<zPos>, for version 0.1 - don't count on it!)
-	 */
-	private String getKey(int xPos, int yPos, int zPos) {
-		return xPos + "_" + yPos + "_" + zPos;
-	}
-
 	/**
 	 * Removes a specified tile and its listener from the game board
 	 *
@@ -403,21 +472,44 @@ public class GamePanel extends JPanel implements MouseListener {
 	 * @return the Tile that was removed from the game board
 	 */
 	public Tile removeTile(int xPos, int yPos, int zPos) {
-		Tile tile = board.remove(getKey(xPos, yPos, zPos));
-		int stackSize = removedTiles.size();
+		return removeTile(engine.getLayout().indexOf(xPos, yPos, zPos));
+	}
+
+	/**
+	 * Removes the tile at a layout position from the game board
+	 *
+	 * @param position the position of the tile in the engine's layout
+	 * @return the Tile that was removed from the game board
+	 */
+	private Tile removeTile(int position) {
+		Tile tile = getTile(position);
 		if (tile == null) {
 			System.err.println("The tile didn't exist, who did this!?");
 		} else {
-			if (sound) {
-				playClip.play();
-			}
-			tile.isDirty = true;
-			removedTiles.push(tile);
-			remove(tile);
-			redraw();
-			repaint();
+			tiles[position] = null;
+			engine.remove(position);
+			tileRemoved(tile);
+		}
+		return tile;
+	}
+
+	/**
+	 * Takes a tile the engine has already removed off of the panel and adds
+	 * it to the removed tiles
+	 *
+	 * @param tile
+	 */
+	private void tileRemoved(Tile tile) {
+		int stackSize = removedTiles.size();
+		if (sound) {
+			playClip.play();
 		}
-		if (stackSize % 2 != 0 && removedTiles.size() > stackSize && removedPanel != null) {
+		tile.isDirty = true;
+		removedTiles.push(tile);
+		remove(tile);
+		redraw();
+		repaintTile(tile);
+		if (stackSize % 2 != 0 && removedPanel != null) {
 			removedPanel.removeAll();
 			for (Tile t: removedTiles) {
 				removedPanel.add(t, 0);
@@ -425,7 +517,6 @@ public class GamePanel extends JPanel implements MouseListener {
 			resizeRemovedFrame();
 			removedPanel.revalidate();
 		}
-		return tile;
 	}
 
 	protected void resizeRemovedFrame() {
@@ -450,11 +541,11 @@ public class GamePanel extends JPanel implements MouseListener {
 			System.err.println("The tile to remove was null.");
 			return null;
 		}
-		if (tile.xPos == null || tile.yPos == null || tile.zPos == null) {
+		if (tile.position < 0) {
 			System.err.println("The tile hasn't been placed yet.");
 			return null;
 		}
-		return removeTile(tile.xPos, tile.yPos, tile.zPos);
+		return removeTile(tile.position);
 	}
 
 	/**
@@ -464,22 +555,42 @@ public class GamePanel extends JPanel implements MouseListener {
 	 * @return
 	 */
 	public boolean undo() {
-		try {
+		return undo(1) > 0;
+	}
+
+	/**
+	 * Undoes a number of pairs at once, with a single update of the board
+	 * and the removed tiles
+	 *
+	 * @param pairs
+	 * @return the number of pairs that were undone
+	 */
+	private int undo(int pairs) {
+		if (finishTimer != null) {
+			return 0;
+		}
+		int undone = 0;
+		while (undone < pairs && engine.undo()) {
 			Tile tile1 = removedTiles.pop();
 			Tile tile2 = removedTiles.pop();
-			board.put(getKey(tile1.xPos, tile1.yPos, tile1.zPos), tile1);
-			board.put(getKey(tile2.xPos, tile2.yPos, tile2.zPos), tile2);
-			restoredTiles.push(tile2);
+			tiles[tile1.position] = tile1;
+			tiles[tile2.position] = tile2;
 			restoredTiles.push(tile1);
-			redraw();
-			repaint();
-		} catch (EmptyStackException e) {
-			return false;
+			restoredTiles.push(tile2);
+			undone++;
+		}
+		if (undone == 0) {
+			return 0;
 		}
+		redraw();
+		repaint();
+		positionChanged();
 
 		((MahjongBoard) getTopLevelAncestor()).checkEnabledMenus();
 
-		if (getRemovedTileCount() > 0 && removedPanel != null) {
+		// Rebuilt even when it's left empty, since in single canvas mode the
+		// tiles put back on the board aren't taken out of it by adding them
+		if (removedPanel != null) {
 			removedPanel.removeAll();
 			for (Tile t: removedTiles) {
 				removedPanel.add(t, 0);
@@ -488,24 +599,68 @@ public class GamePanel extends JPanel implements MouseListener {
 			removedPanel.revalidate();
 		}
 
-		return true;
+		return undone;
+	}
+
+	/**
+	 * Goes back to the latest position that can still be won, once the
+	 * monitor has found it. Moves made in the meantime call it off
+	 */
+	public void undoToLastWinnable() {
+		if (monitor == null || !canUndo()) {
+			return;
+		}
+		if (selectedTile != null) {
+			selectedTile.highlight(false);
+			selectedTile = null;
+		}
+		monitor.findLastWinnable(engine, new SolvabilityMonitor.RewindListener() {
+			@Override
+			public void lastWinnableFound(int pairs) {
+				if (!isDisplayable()) {
+					return;
+				}
+				if (pairs < 0) {
+					JOptionPane.showMessageDialog(GamePanel.this,
+							"No earlier position could be shown to be winnable.",
+							"Undo to Last Winnable", JOptionPane.INFORMATION_MESSAGE);
+					// Looking cancelled the check of the current position
+					positionChanged();
+				} else if (pairs == 0) {
+					JOptionPane.showMessageDialog(GamePanel.this,
+							"This game can still be won.",
+							"Undo to Last Winnable", JOptionPane.INFORMATION_MESSAGE);
+					positionChanged();
+				} else {
+					undo(pairs);
+				}
+			}
+		});
 	}
 
 	/**
 	 * Performs a redo if any are available
 	 */
 	public void redo() {
-		try {
-			Tile tile1 = restoredTiles.pop();
-			Tile tile2 = restoredTiles.pop();
-			removeTile(tile1);
-			removeTile(tile2);
+		if (finishTimer != null) {
+			return;
+		}
+		if (!engine.redo()) {
+			System.err.println("No more redos");
+			return;
+		}
+		Tile tile1 = restoredTiles.pop();
+		Tile tile2 = restoredTiles.pop();
+		tiles[tile1.position] = null;
+		tiles[tile2.position] = null;
+		tileRemoved(tile1);
+		tileRemoved(tile2);
+		positionChanged();
 
-			((MahjongBoard) getTopLevelAncestor()).checkEnabledMenus();
+		((MahjongBoard) getTopLevelAncestor()).checkEnabledMenus();
 
+		if (removedPanel != null) {
 			resizeRemovedFrame();
-		} catch (EmptyStackException e) {
-			System.err.println("No more redos");
 		}
 	}
 
@@ -528,36 +683,165 @@ public class GamePanel extends JPanel implements MouseListener {
 	 * @return
 	 */
 	public boolean hint(boolean highlight, boolean bestMove) {
-		for (Tile tile : board.values()) {
-			if (!isOpen(tile)) {
-				continue;
+		if (!engine.hasMove()) {
+			return false;
+		}
+		if (highlight && bestMove) {
+			findBestMove();
+		} else if (highlight) {
+			showHint(engine.findMove());
+		}
+		return true;
+	}
+
+	/**
+	 * Looks for the best move on a worker thread, and highlights it when it's
+	 * found unless a move has been made in the meantime
+	 */
+	private void findBestMove() {
+		if (hintWorker != null) {
+			return;
+		}
+		final MahjongEngine position = new MahjongEngine(engine);
+		final long budget = hintBudgetMillis;
+		final AtomicBoolean cancel = new AtomicBoolean();
+		hintCancel = cancel;
+		hintWorker = new SwingWorker<int[], Void>() {
+			@Override
+			protected int[] doInBackground() {
+				return advisor.findBestMove(position, budget, cancel);
 			}
-			for (Tile t : board.values()) {
-				if (tile == t) {
-					break;
+
+			@Override
+			protected void done() {
+				if (!isDisplayable()) {
+					return;
 				}
-				if (isOpen(t) && tile.matches(t)) {
-					if (highlight) {
-						tile.hint(true);
-						t.hint(true);
-						final Tile finalTile1 = tile;
-						final Tile finalTile2 = t;
-						repaint();
-						Timer timer = new Timer();
-						timer.schedule(new TimerTask() {
-							@Override
-							public void run() {
-								finalTile1.hint(false);
-								finalTile2.hint(false);
-								repaint();
-							}
-						}, 1000);
+				hintWorker = null;
+				hintCancel = null;
+				try {
+					int[] move = get();
+					if (move != null && engine.getHash() == position.getHash()) {
+						showHint(move);
 					}
-					return true;
+				} catch (Exception e) {
+					System.err.println("Couldn't find the best move: " + e);
 				}
 			}
+		};
+		hintWorker.execute();
+	}
+
+	/**
+	 * Sets how long the best move hint can take
+	 *
+	 * @param budgetMillis
+	 */
+	protected void setHintBudget(long budgetMillis) {
+		hintBudgetMillis = budgetMillis;
+	}
+
+	/**
+	 * Highlights two tiles for a second
+	 *
+	 * @param move the tiles' positions
+	 */
+	private void showHint(int[] move) {
+		final Tile finalTile1 = getTile(move[0]);
+		final Tile finalTile2 = getTile(move[1]);
+		finalTile1.hint(true);
+		finalTile2.hint(true);
+		repaintTile(finalTile1);
+		repaintTile(finalTile2);
+		estimate(move);
+		Timer timer = new Timer();
+		timer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				finalTile1.hint(false);
+				finalTile2.hint(false);
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (!isDisplayable()) {
+							return;
+						}
+						hideWinChance();
+						repaintTile(finalTile1);
+						repaintTile(finalTile2);
+					}
+				});
+			}
+		}, 1000);
+	}
+
+	/**
+	 * Plays out the position on the evaluator's threads, and shows the hinted
+	 * move's chance of winning next to it while the hint is still up
+	 *
+	 * @param move
+	 */
+	private void estimate(final int[] move) {
+		if (evaluator == null || estimateWorker != null) {
+			return;
+		}
+		final MahjongEngine position = new MahjongEngine(engine);
+		estimateWorker = new SwingWorker<WinEstimate, Void>() {
+			@Override
+			protected WinEstimate doInBackground() {
+				return evaluator.evaluate(position, MonteCarloEvaluator.DEFAULT_BUDGET_MILLIS);
+			}
+
+			@Override
+			protected void done() {
+				if (!isDisplayable()) {
+					return;
+				}
+				estimateWorker = null;
+				try {
+					WinEstimate estimate = get();
+					int index = estimate.indexOf(move[0], move[1]);
+					Tile tile = getTile(move[0]);
+					if (index >= 0 && estimate.getPlayouts(index) > 0 && tile != null
+							&& tile.isHinted() && engine.getHash() == position.getHash()) {
+						showWinChance(tile, estimate.getWinRate(index));
+					}
+				} catch (Exception e) {
+					System.err.println("Couldn't estimate the move: " + e);
+				}
+			}
+		};
+		estimateWorker.execute();
+	}
+
+	/**
+	 * Shows a win rate just to the right of a tile
+	 *
+	 * @param tile
+	 * @param winRate
+	 */
+	private void showWinChance(Tile tile, double winRate) {
+		hideWinChance();
+		winChance = new JLabel(String.format(" %.0f%% ", winRate * 100));
+		winChance.setOpaque(true);
+		winChance.setBackground(Color.YELLOW);
+		winChance.setToolTipText("Share of practice playouts won after this move");
+		Dimension size = winChance.getPreferredSize();
+		Rectangle bounds = getTileBounds(tile);
+		int x = Math.min(bounds.x + bounds.width, getWidth() - size.width);
+		winChance.setBounds(x, bounds.y, size.width, size.height);
+		add(winChance);
+		setComponentZOrder(winChance, 0);
+		repaint(winChance.getBounds());
+	}
+
+	private void hideWinChance() {
+		if (winChance != null) {
+			Rectangle bounds = winChance.getBounds();
+			remove(winChance);
+			winChance = null;
+			repaint(bounds);
 		}
-		return false;
 	}
 
 	/**
@@ -569,55 +853,25 @@ public class GamePanel extends JPanel implements MouseListener {
 	 * @return
 	 */
 	public Tile getTile(int xPos, int yPos, int zPos) {
-		return board.get(getKey(xPos, yPos, zPos));
+		return getTile(engine.getLayout().indexOf(xPos, yPos, zPos));
 	}
 
-	public boolean isOpen(int xPos, int yPos, int zPos) {
-		// Checks the z to see if it is closed from above
-		if (getTile(xPos, yPos, zPos - 1) != null) {
-			return false;
-		}
-
-		boolean isOpenLeft = getTile(xPos - 1, yPos, zPos) == null
-				&& (xPos != 1 || getTile(xPos - 2, yPos, zPos) == null);
-		boolean isOpenRight = getTile(xPos + 1, yPos, zPos) == null
-				&& (xPos != -1 || getTile(xPos + 2, yPos, zPos) == null);
-		boolean isMiddleY = Math.abs(yPos) == 1;
-		boolean isZeroY = yPos == 0;
-		// Checks for the individual tiles on the end in the middle rows
-		if (isOpenLeft && isMiddleY) {
-			isOpenLeft = getTile(xPos - 1, 0, zPos) == null;
-		} else if (isOpenLeft && isZeroY) {
-			isOpenLeft = getTile(xPos - 1, 1, zPos) == null
-					&& getTile(xPos - 1, -1, zPos) == null;
-		}
-		if (isOpenRight && isMiddleY) {
-			isOpenRight = getTile(xPos + 1, 0, zPos) == null;
-		}
-
-		// Checks for the z being the top middle square covering the four
-		// top tiles
-		if (isMiddleY && Math.abs(xPos) == 1 && getTile(0, 0, 0) != null) {
-			return false;
-		}
-		if (!isOpenLeft && !isOpenRight) {
-			return false;
-		}
-
-		if (Math.abs(xPos) == 1) {
-		}
+	private Tile getTile(int position) {
+		return position < 0 ? null : tiles[position];
+	}
 
-		return true;
+	public boolean isOpen(int xPos, int yPos, int zPos) {
+		int position = engine.getLayout().indexOf(xPos, yPos, zPos);
+		return position >= 0 && engine.isOpen(position);
 	}
 
 	public boolean isOpen(Tile tile) {
-		if (tile == null
-				|| tile.xPos == null || tile.yPos == null || tile.zPos == null) {
+		if (tile == null || tile.position < 0) {
 			System.err.println("Invalid tile to check for open.");
 			return false;
 		}
 
-		return isOpen(tile.xPos, tile.yPos, tile.zPos);
+		return engine.isOpen(tile.position);
 	}
 
 	/**
@@ -626,7 +880,7 @@ public class GamePanel extends JPanel implements MouseListener {
 	 * @return
 	 */
 	public boolean canRedo() {
-		return !restoredTiles.isEmpty();
+		return engine.canRedo();
 	}
 
 	/**
@@ -635,7 +889,7 @@ public class GamePanel extends JPanel implements MouseListener {
 	 * @return
 	 */
 	public boolean canUndo() {
-		return !removedTiles.isEmpty();
+		return engine.canUndo();
 	}
 
 	@Override
@@ -656,7 +910,14 @@ public class GamePanel extends JPanel implements MouseListener {
 
 	@Override
 	public void mouseReleased(MouseEvent e) {
-		if (e.isPopupTrigger() && !(e.getSource() instanceof Tile)) {
+		Object source = e.getSource();
+		if (singleCanvas && source == this) {
+			Tile tile = getTileAt(e.getX(), e.getY());
+			if (tile != null) {
+				source = tile;
+			}
+		}
+		if (e.isPopupTrigger() && !(source instanceof Tile)) {
 			JPopupMenu popup = new JPopupMenu();
 
 			JMenuItem menuItem = new JMenuItem("Undo");
@@ -696,53 +957,288 @@ public class GamePanel extends JPanel implements MouseListener {
 			});
 			popup.add(menuItem);
 
+			menuItem = new JMenuItem("Best Move");
+			menuItem.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					if (allowHint(((JMenuItem) e.getSource()).getTopLevelAncestor())) {
+						hint(true, true);
+					}
+				}
+			});
+			popup.add(menuItem);
+
 			popup.show(this, e.getX(), e.getY());
 			return;
 		} else if (e.isPopupTrigger()) {
 			return;
 		}
-		Object source = e.getSource();
+		if (finishTimer != null) {
+			return;
+		}
 		if (source instanceof Tile && isOpen((Tile) source)) {
 			Tile tile = (Tile) source;
 			restoredTiles.clear();
-			if (selectedTile != null && selectedTile != tile
-					&& selectedTile.matches(tile)) {
+			engine.clearRedo();
+			if (selectedTile != null
+					&& engine.matches(selectedTile.position, tile.position)) {
 				removeTile(tile);
 				selectedTile.highlight(false);
 				removeTile(selectedTile);
+				positionChanged();
 				((MahjongBoard) getTopLevelAncestor()).checkEnabledMenus();
-				if (board.isEmpty()) {
-					fireworks = new Fireworks(this);
-					fireworks.setSound(sound);
-					fireworks.fire();
-				}
-				if (!hint(false)) {
-					((MahjongBoard) getTopLevelAncestor()).checkEndGame();
-				}
 				selectedTile = null;
+				checkGameOver();
 			} else if (selectedTile == tile) {
 				selectedTile.highlight(false);
+				repaintTile(selectedTile);
 				selectedTile = null;
-				repaint();
 			} else if (selectedTile != null) {
 				selectedTile.highlight(false);
+				repaintTile(selectedTile);
 				selectedTile = tile;
 				tile.highlight(true);
-				repaint();
+				repaintTile(tile);
 			} else {
 				selectedTile = tile;
 				selectedTile.highlight(true);
-				repaint();
+				repaintTile(tile);
 			}
 		} else if (!(source instanceof Tile)) {
 			if (selectedTile != null) {
 				selectedTile.highlight(false);
+				repaintTile(selectedTile);
 				selectedTile = null;
-				repaint();
 			}
 		}
 	}
 
+	/**
+	 * Shuffles the tiles left on the board into an arrangement that can be
+	 * won, working it out off the event dispatch thread. Undo and redo start
+	 * over from the new arrangement
+	 */
+	public void shuffleRemaining() {
+		if (finishTimer != null || shuffleWorker != null
+				|| engine.getRemainingCount() == 0) {
+			return;
+		}
+		final MahjongEngine position = new MahjongEngine(engine);
+		final long hash = engine.getHash();
+		shuffleWorker = new SwingWorker<SolverResult, Void>() {
+			@Override
+			protected SolverResult doInBackground() {
+				return reshuffler.reshuffle(position, new Random(),
+						Reshuffler.DEFAULT_TIME_LIMIT);
+			}
+
+			@Override
+			protected void done() {
+				if (!isDisplayable()) {
+					return;
+				}
+				shuffleWorker = null;
+				SolverResult result;
+				try {
+					result = get();
+				} catch (Exception e) {
+					System.err.println("Couldn't shuffle the tiles: " + e);
+					return;
+				}
+				// A move made in the meantime wins over the shuffle
+				if (engine.getHash() != hash) {
+					return;
+				}
+				if (result.isUnwinnable()) {
+					JOptionPane.showMessageDialog(GamePanel.this,
+							"Couldn't find a way to arrange the tiles left that can be won.",
+							"Shuffle Remaining", JOptionPane.INFORMATION_MESSAGE);
+					return;
+				}
+				reshuffled(position);
+			}
+		};
+		shuffleWorker.execute();
+	}
+
+	/**
+	 * Puts new tiles on the board for a reshuffled engine
+	 *
+	 * @param shuffled
+	 */
+	private void reshuffled(MahjongEngine shuffled) {
+		engine.copyFrom(shuffled);
+		if (selectedTile != null) {
+			selectedTile.highlight(false);
+			selectedTile = null;
+		}
+		for (int position = 0; position < tiles.length; position++) {
+			Tile old = tiles[position];
+			if (old != null) {
+				remove(old);
+				tiles[position] = createTile(position, old.drawRound);
+				tiles[position].isDirty = true;
+			}
+		}
+		restoredTiles.clear();
+		redraw();
+		repaint();
+		positionChanged();
+		((MahjongBoard) getTopLevelAncestor()).checkEnabledMenus();
+	}
+
+	/**
+	 * Sets off the fireworks if the board is clear, and asks what to do next
+	 * if there are no moves left
+	 */
+	private void checkGameOver() {
+		if (engine.getRemainingCount() == 0) {
+			fireworks = new Fireworks(this);
+			fireworks.setSound(sound);
+			fireworks.fire();
+		}
+		if (!hint(false)) {
+			((MahjongBoard) getTopLevelAncestor()).checkEndGame();
+		}
+	}
+
+	/**
+	 * Returns the hash of the position on the board
+	 *
+	 * @return
+	 */
+	protected long getPositionHash() {
+		return engine.getHash();
+	}
+
+	/**
+	 * Takes the monitor's winning line for the current position, which makes
+	 * auto-finish possible
+	 *
+	 * @param line the moves, or null if the position isn't known to be won
+	 */
+	protected void setWinningLine(int[] line) {
+		winningLine = line;
+	}
+
+	public boolean canAutoFinish() {
+		return winningLine != null && winningLine.length > 0 && finishTimer == null;
+	}
+
+	/**
+	 * Returns true the first time in a game that the rest of it is known to
+	 * be won and short enough that clicking it out is a chore
+	 *
+	 * @return
+	 */
+	protected boolean shouldOfferAutoFinish() {
+		if (autoFinishOffered || !canAutoFinish()
+				|| engine.getRemainingCount() > AUTO_FINISH_TILES) {
+			return false;
+		}
+		autoFinishOffered = true;
+		return true;
+	}
+
+	/**
+	 * Plays out the winning line as a quick animation. Each tick takes a few
+	 * pairs off the board and repaints only where they were, and the removed
+	 * tiles, menus and monitor are brought up to date once at the end
+	 */
+	public void autoFinish() {
+		if (!canAutoFinish()) {
+			return;
+		}
+		final int[] line = winningLine;
+		if (selectedTile != null) {
+			selectedTile.highlight(false);
+			selectedTile = null;
+		}
+		restoredTiles.clear();
+		engine.clearRedo();
+
+		finishTimer = new javax.swing.Timer(FINISH_DELAY, new ActionListener() {
+			private int next = 0;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (!isDisplayable()) {
+					return;
+				}
+				Rectangle dirty = null;
+				for (int i = 0; i < FINISH_PAIRS_PER_TICK * 2 && next < line.length; i++) {
+					int position = line[next++];
+					Tile tile = tiles[position];
+					tiles[position] = null;
+					engine.remove(position);
+					tile.isDirty = true;
+					removedTiles.push(tile);
+					remove(tile);
+					Rectangle bounds = getTileBounds(tile);
+					dirty = dirty == null ? bounds : dirty.union(bounds);
+				}
+				if (dirty != null) {
+					if (sound) {
+						playClip.play();
+					}
+					repaint(dirty);
+				}
+				if (next >= line.length) {
+					finishTimer.stop();
+					finishTimer = null;
+					finished();
+				}
+			}
+		});
+		finishTimer.setInitialDelay(0);
+		finishTimer.start();
+	}
+
+	/**
+	 * Catches everything else up with the board after an auto-finish
+	 */
+	private void finished() {
+		if (removedPanel != null) {
+			removedPanel.removeAll();
+			for (Tile t: removedTiles) {
+				removedPanel.add(t, 0);
+			}
+			resizeRemovedFrame();
+			removedPanel.revalidate();
+		}
+		positionChanged();
+		((MahjongBoard) getTopLevelAncestor()).checkEnabledMenus();
+		checkGameOver();
+	}
+
+	/**
+	 * Stops everything the panel still has going, once a new game's panel
+	 * has taken its place, so nothing it finishes later reaches the monitor
+	 * or the menus
+	 */
+	protected void dispose() {
+		monitor = null;
+		if (hintWorker != null) {
+			hintCancel.set(true);
+			hintWorker.cancel(false);
+			hintWorker = null;
+			hintCancel = null;
+		}
+		if (estimateWorker != null) {
+			evaluator.cancel();
+			estimateWorker.cancel(false);
+			estimateWorker = null;
+		}
+		if (shuffleWorker != null) {
+			shuffleWorker.cancel(false);
+			shuffleWorker = null;
+		}
+		if (finishTimer != null) {
+			finishTimer.stop();
+			finishTimer = null;
+		}
+	}
+
 	protected void stopFireworks() {
 		if (fireworks != null) {
 			fireworks.stop();
@@ -0,0 +1,47 @@
+/**
+ * Makes the move that frees the most tiles, unless a group has every one of
+ * its remaining tiles open, in which case clearing it can't hurt and comes
+ * first
+ */
+public class GreedyStrategy implements Strategy {
+
+	@Override
+	public String getName() {
+		return "greedy";
+	}
+
+	@Override
+	public int chooseMove(MahjongEngine engine, int[] moves, int count) {
+		int best = 0;
+		int mostFreed = -1;
+		for (int i = 0; i < count; i++) {
+			int first = moves[i * 2];
+			int group = engine.getMatchGroupAt(first);
+			if (engine.getOpenCount(group) == engine.getRemainingCount(group)) {
+				return i;
+			}
+			int freed = freed(engine, first, moves[i * 2 + 1]);
+			if (freed > mostFreed) {
+				best = i;
+				mostFreed = freed;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns how many tiles a move opens up
+	 *
+	 * @param engine
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	static int freed(MahjongEngine engine, int first, int second) {
+		int openBefore = engine.getOpenCount() - 2;
+		engine.play(first, second);
+		int freed = engine.getOpenCount() - openBefore;
+		engine.takeBack();
+		return freed;
+	}
+}
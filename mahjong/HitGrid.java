@@ -0,0 +1,242 @@
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the top tile under a point on the board without looking at every
+ * tile. The board is cut into square cells, and each cell lists the positions
+ * whose tiles cover any of it, the top one first, so a pick only reads the
+ * list for one cell and stops at the first tile still on the board that
+ * holds the point. A grid only fits one layout at one board size, and is
+ * built again when either changes
+ */
+public class HitGrid {
+
+	/**
+	 * The width and height of a cell, in pixels. Tiles are a few cells across
+	 */
+	public static final int CELL_SIZE = 16;
+
+	private final Layout layout;
+	private final int width;
+	private final int height;
+	private final int columns;
+	private final int rows;
+	// Where each position's tile is drawn
+	private final int[] left;
+	private final int[] top;
+	// The candidates for cell i are candidates[cellStart[i]] up to, but not
+	// including, candidates[cellStart[i + 1]]
+	private final int[] cellStart;
+	private final int[] candidates;
+
+	/**
+	 * Builds the grid for a board
+	 *
+	 * @param layout
+	 * @param paintOrder every position, in the order the tiles are painted,
+	 * the bottom one first
+	 * @param width the board's
+	 * @param height the board's
+	 */
+	public HitGrid(Layout layout, int[] paintOrder, int width, int height) {
+		this.layout = layout;
+		this.width = width;
+		this.height = height;
+		columns = Math.max(1, (width + CELL_SIZE - 1) / CELL_SIZE);
+		rows = Math.max(1, (height + CELL_SIZE - 1) / CELL_SIZE);
+		left = new int[layout.size()];
+		top = new int[layout.size()];
+		Point location = new Point();
+		for (int position = 0; position < layout.size(); position++) {
+			Tile.locate(layout, position, width, height, location);
+			left[position] = location.x;
+			top[position] = location.y;
+		}
+
+		// Count each cell's candidates, then fill them in from the top tile
+		// down, so every cell's list ends up top first
+		cellStart = new int[columns * rows + 1];
+		for (int position : paintOrder) {
+			forEachCell(position, null);
+		}
+		for (int cell = 0; cell < columns * rows; cell++) {
+			cellStart[cell + 1] += cellStart[cell];
+		}
+		candidates = new int[cellStart[columns * rows]];
+		int[] filled = new int[columns * rows];
+		for (int i = paintOrder.length - 1; i >= 0; i--) {
+			forEachCell(paintOrder[i], filled);
+		}
+	}
+
+	/**
+	 * Goes over the cells a position's tile covers, counting it in each if
+	 * filled is null and otherwise adding it to each
+	 *
+	 * @param position
+	 * @param filled how many candidates each cell has been given so far
+	 */
+	private void forEachCell(int position, int[] filled) {
+		int firstColumn = Math.max(0, left[position] / CELL_SIZE);
+		int lastColumn = Math.min(columns - 1,
+				(left[position] + TileAtlas.SPRITE_WIDTH - 1) / CELL_SIZE);
+		int firstRow = Math.max(0, top[position] / CELL_SIZE);
+		int lastRow = Math.min(rows - 1,
+				(top[position] + TileAtlas.SPRITE_HEIGHT - 1) / CELL_SIZE);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				int cell = row * columns + column;
+				if (filled == null) {
+					// Shifted up one, so the running total gives the starts
+					cellStart[cell + 1]++;
+				} else {
+					candidates[cellStart[cell] + filled[cell]++] = position;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the grid was built for a layout at a board size
+	 *
+	 * @param layout
+	 * @param width
+	 * @param height
+	 * @return
+	 */
+	public boolean fits(Layout layout, int width, int height) {
+		return this.layout == layout && this.width == width && this.height == height;
+	}
+
+	/**
+	 * Finds the top tile on the board under a point
+	 *
+	 * @param x
+	 * @param y
+	 * @param engine whose tiles are still on the board
+	 * @return the tile's position, or -1 if there isn't one there
+	 */
+	public int pick(int x, int y, MahjongEngine engine) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+		int cell = (y / CELL_SIZE) * columns + x / CELL_SIZE;
+		for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+			int position = candidates[i];
+			if (engine.isOccupied(position)
+					&& x >= left[position] && x < left[position] + TileAtlas.SPRITE_WIDTH
+					&& y >= top[position] && y < top[position] + TileAtlas.SPRITE_HEIGHT) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the most candidates any cell has, which bounds the work of a
+	 * pick
+	 *
+	 * @return
+	 */
+	public int getMaxCandidates() {
+		int most = 0;
+		for (int cell = 0; cell < columns * rows; cell++) {
+			most = Math.max(most, cellStart[cell + 1] - cellStart[cell]);
+		}
+		return most;
+	}
+
+	/**
+	 * Finds the top tile the slow way, by trying every tile from the top
+	 *
+	 * @param x
+	 * @param y
+	 * @param engine
+	 * @param paintOrder
+	 * @return
+	 */
+	private int scan(int x, int y, MahjongEngine engine, int[] paintOrder) {
+		for (int i = paintOrder.length - 1; i >= 0; i--) {
+			int position = paintOrder[i];
+			if (engine.isOccupied(position)
+					&& x >= left[position] && x < left[position] + TileAtlas.SPRITE_WIDTH
+					&& y >= top[position] && y < top[position] + TileAtlas.SPRITE_HEIGHT) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Picks at every point of a board part way through a game with the grid
+	 * and by trying every tile, checks that they agree, and prints how long
+	 * each took. Arguments are optional: the board's width and height
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int width = args.length > 1 ? Integer.parseInt(args[0]) : 1000;
+		int height = args.length > 1 ? Integer.parseInt(args[1]) : 740;
+		MahjongEngine engine = new MahjongEngine();
+		engine.deal(0);
+		int[] moves = new int[MahjongEngine.MAX_MOVES * 2];
+		for (int i = 0; i < 20 && engine.getMoves(moves) > 0; i++) {
+			engine.play(moves[0], moves[1]);
+		}
+
+		// Stack the tiles the way GamePanel does
+		Layout layout = engine.getLayout();
+		List<Tile> deck = new ArrayList<>();
+		for (int position = 0; position < layout.size(); position++) {
+			Tile tile = Tile.create(TileFace.get(engine.getFace(position)));
+			tile.layout = layout;
+			tile.position = position;
+			deck.add(tile);
+		}
+		Collections.sort(deck);
+		int[] paintOrder = new int[deck.size()];
+		for (int i = 0; i < paintOrder.length; i++) {
+			paintOrder[i] = deck.get(paintOrder.length - 1 - i).position;
+		}
+
+		long start = System.nanoTime();
+		HitGrid grid = new HitGrid(layout, paintOrder, width, height);
+		long built = System.nanoTime() - start;
+		int picks = width * height;
+		long gridNanos = 0;
+		long scanNanos = 0;
+		int found = 0;
+		for (int round = 0; round < 5; round++) {
+			start = System.nanoTime();
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					found += grid.pick(x, y, engine);
+				}
+			}
+			gridNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					found += grid.scan(x, y, engine, paintOrder);
+				}
+			}
+			scanNanos = System.nanoTime() - start;
+		}
+		int disagreements = 0;
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (grid.pick(x, y, engine) != grid.scan(x, y, engine, paintOrder)) {
+					disagreements++;
+				}
+			}
+		}
+		System.out.println(String.format("Built in %.2f ms, at most %d candidates a cell",
+				built / 1e6, grid.getMaxCandidates()));
+		System.out.println(String.format("Grid %.1f ns a pick, every tile %.1f ns a pick",
+				(double) gridNanos / picks, (double) scanNanos / picks));
+		// Printing what was found keeps the timed loops from being skipped
+		System.out.println(disagreements + " points picked differently (" + found + ")");
+	}
+}
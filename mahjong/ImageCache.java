@@ -0,0 +1,196 @@
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * The images under images/, each decoded and scaled once and then shared. Any
+ * thread can ask for an image, and they can be loaded ahead of time on a
+ * thread of their own so that nothing is read from disk while painting.
+ *
+ * It counts how often an image was already there and how long decoding and
+ * scaling the others took, to show what it saves
+ */
+public class ImageCache {
+
+	private static final ImageCache instance = new ImageCache();
+
+	// Keyed by the file name and the scale
+	private final ConcurrentMap<String, BufferedImage> images = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong decodeNanos = new AtomicLong();
+
+	private ImageCache() {
+	}
+
+	public static ImageCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Gets an image, loading it the first time
+	 *
+	 * @param name the file name under images/
+	 * @param scale how much to scale it by, 1 to leave it as it is
+	 * @return the image, or null if it can't be read
+	 */
+	public BufferedImage get(String name, double scale) {
+		String key = name + "@" + scale;
+		BufferedImage image = images.get(key);
+		if (image != null) {
+			hits.incrementAndGet();
+			return image;
+		}
+		misses.incrementAndGet();
+		long start = System.nanoTime();
+		image = load(name, scale);
+		decodeNanos.addAndGet(System.nanoTime() - start);
+		if (image == null) {
+			return null;
+		}
+		// Another thread might have got there first, in which case its image
+		// is the one everyone shares
+		BufferedImage other = images.putIfAbsent(key, image);
+		return other != null ? other : image;
+	}
+
+	private BufferedImage load(String name, double scale) {
+		BufferedImage image;
+		try (InputStream input = ImageCache.class.getResourceAsStream("images/" + name)) {
+			if (input == null) {
+				System.err.println("No image called " + name);
+				return null;
+			}
+			image = ImageIO.read(input);
+		} catch (IOException e) {
+			System.err.println("Couldn't read " + name + ": " + e.getMessage());
+			return null;
+		}
+		if (image == null || scale == 1) {
+			return image;
+		}
+
+		int width = Math.max(1, (int) (image.getWidth() * scale));
+		int height = Math.max(1, (int) (image.getHeight() * scale));
+		BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = scaled.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+				RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(image, 0, 0, width, height, null);
+		g.dispose();
+		return scaled;
+	}
+
+	/**
+	 * Loads images on a background thread, so they're ready before they're
+	 * asked for
+	 *
+	 * @param names file names under images/
+	 * @param scale
+	 */
+	public void warm(final String[] names, final double scale) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (String name : names) {
+					get(name, scale);
+				}
+			}
+		}, "Image cache");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the share of requests that found their image already loaded
+	 *
+	 * @return from 0 to 1
+	 */
+	public double getHitRate() {
+		long total = hits.get() + misses.get();
+		return total == 0 ? 0 : (double) hits.get() / total;
+	}
+
+	/**
+	 * Returns how long has been spent decoding and scaling, in total
+	 *
+	 * @return
+	 */
+	public long getDecodeNanos() {
+		return decodeNanos.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d images, %d hits, %d misses (%.1f%% hit rate), %.1f ms decoding",
+				images.size(), hits.get(), misses.get(), getHitRate() * 100,
+				decodeNanos.get() / 1e6);
+	}
+
+	/**
+	 * Paints every picture tile's image a number of times, the way the tiles
+	 * used to load them on every paint and then through the loaded cache, and
+	 * prints the times and the cache's counts. The optional argument is the
+	 * number of times
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		String[] names = PictureTile.getImageNames();
+		BufferedImage target = new BufferedImage(Tile.WIDTH, Tile.HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = target.createGraphics();
+
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (String name : names) {
+				ImageIcon icon = new ImageIcon(ImageCache.class.getResource("images/" + name));
+				icon = new ImageIcon(icon.getImage().getScaledInstance(
+						(int) (icon.getIconWidth() * PictureTile.SCALE),
+						(int) (icon.getIconHeight() * PictureTile.SCALE),
+						Image.SCALE_DEFAULT));
+				g.drawImage(icon.getImage(), 0, 0, null);
+			}
+		}
+		long uncached = System.nanoTime() - start;
+
+		// Time the loading apart from the paints that find the images ready
+		ImageCache cache = getInstance();
+		for (String name : names) {
+			cache.get(name, PictureTile.SCALE);
+		}
+		start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			for (String name : names) {
+				g.drawImage(cache.get(name, PictureTile.SCALE), 0, 0, null);
+			}
+		}
+		long cached = System.nanoTime() - start;
+		g.dispose();
+
+		int paints = rounds * names.length;
+		System.out.println(String.format("Loading every paint: %.1f us a paint",
+				uncached / 1e3 / paints));
+		System.out.println(String.format("Through the cache:   %.1f us a paint",
+				cached / 1e3 / paints));
+		System.out.println(cache);
+	}
+}
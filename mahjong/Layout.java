@@ -0,0 +1,417 @@
+import java.util.Arrays;
+
+/**
+ * The logical tile positions of a board layout. Positions are numbered from
+ * 0 to size - 1 in the order tiles are dealt onto them, and the engine refers
+ * to tiles by that number only. The x, y and z values are the same logical
+ * coordinates the Swing tiles use to place themselves, z being 0 at the top
+ */
+public class Layout {
+
+	/**
+	 * The standard 144 tile turtle layout
+	 */
+	public static final Layout TURTLE = createTurtle();
+
+	private final int[] xs;
+	private final int[] ys;
+	private final int[] zs;
+
+	// Dense lookup from coordinates to positions, -1 where there is no tile
+	private final int minX;
+	private final int minY;
+	private final int minZ;
+	private final int width;
+	private final int depth;
+	private final int[] cells;
+
+	// Who blocks whom: the tiles on top of each position and the tiles that
+	// close off its left and right sides, then the same relations turned
+	// around so a removal knows which positions it might open
+	private final int[][] above;
+	private final int[][] left;
+	private final int[][] right;
+	private final int[][] below;
+	private final int[][] rightNeighbours;
+	private final int[][] leftNeighbours;
+
+	// The same graph as bit masks, when the layout is small enough
+	private final Bitboard bitboard;
+
+	public Layout(int[] xs, int[] ys, int[] zs) {
+		if (xs.length != ys.length || xs.length != zs.length) {
+			throw new IllegalArgumentException("Coordinate arrays must be " +
+					"the same length");
+		}
+		this.xs = xs.clone();
+		this.ys = ys.clone();
+		this.zs = zs.clone();
+
+		int lowX = Integer.MAX_VALUE;
+		int lowY = Integer.MAX_VALUE;
+		int lowZ = Integer.MAX_VALUE;
+		int highX = Integer.MIN_VALUE;
+		int highY = Integer.MIN_VALUE;
+		int highZ = Integer.MIN_VALUE;
+		for (int i = 0; i < xs.length; i++) {
+			lowX = Math.min(lowX, xs[i]);
+			lowY = Math.min(lowY, ys[i]);
+			lowZ = Math.min(lowZ, zs[i]);
+			highX = Math.max(highX, xs[i]);
+			highY = Math.max(highY, ys[i]);
+			highZ = Math.max(highZ, zs[i]);
+		}
+		minX = lowX;
+		minY = lowY;
+		minZ = lowZ;
+		width = highX - lowX + 1;
+		depth = highY - lowY + 1;
+		cells = new int[width * depth * (highZ - lowZ + 1)];
+		Arrays.fill(cells, -1);
+
+		for (int i = 0; i < xs.length; i++) {
+			int cell = cell(xs[i], ys[i], zs[i]);
+			if (cells[cell] != -1) {
+				throw new IllegalArgumentException("Two positions share the " +
+						"coordinates " + xs[i] + ", " + ys[i] + ", " + zs[i]);
+			}
+			cells[cell] = i;
+		}
+
+		int size = xs.length;
+		above = new int[size][];
+		left = new int[size][];
+		right = new int[size][];
+		for (int i = 0; i < size; i++) {
+			int x = xs[i];
+			int y = ys[i];
+			int z = zs[i];
+			boolean isMiddleY = Math.abs(y) == 1;
+
+			// The top middle tile sits across the four tiles under it
+			above[i] = positions(indexOf(x, y, z - 1),
+					isMiddleY && Math.abs(x) == 1 ? indexOf(0, 0, 0) : -1);
+
+			// There is no x of zero, so the 1 and -1 columns touch, and the
+			// single tiles on the ends of the middle row touch both middle rows
+			left[i] = positions(indexOf(x - 1, y, z),
+					x == 1 ? indexOf(x - 2, y, z) : -1,
+					isMiddleY ? indexOf(x - 1, 0, z) : -1,
+					y == 0 ? indexOf(x - 1, 1, z) : -1,
+					y == 0 ? indexOf(x - 1, -1, z) : -1);
+			right[i] = positions(indexOf(x + 1, y, z),
+					x == -1 ? indexOf(x + 2, y, z) : -1,
+					isMiddleY ? indexOf(x + 1, 0, z) : -1);
+		}
+		below = invert(above);
+		rightNeighbours = invert(left);
+		leftNeighbours = invert(right);
+
+		bitboard = size <= Bitboard.MAX_POSITIONS ? new Bitboard(this) : null;
+	}
+
+	/**
+	 * Collects the positions that exist, leaving out the -1s and duplicates
+	 *
+	 * @param candidates
+	 * @return
+	 */
+	private static int[] positions(int... candidates) {
+		int[] result = new int[candidates.length];
+		int count = 0;
+		for (int candidate : candidates) {
+			boolean duplicate = candidate < 0;
+			for (int i = 0; i < count && !duplicate; i++) {
+				duplicate = result[i] == candidate;
+			}
+			if (!duplicate) {
+				result[count++] = candidate;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Turns a blocking relation around, so that for every position it lists
+	 * the positions it blocks
+	 *
+	 * @param relation
+	 * @return
+	 */
+	private static int[][] invert(int[][] relation) {
+		int[] counts = new int[relation.length];
+		for (int[] blockers : relation) {
+			for (int blocker : blockers) {
+				counts[blocker]++;
+			}
+		}
+		int[][] inverted = new int[relation.length][];
+		for (int i = 0; i < relation.length; i++) {
+			inverted[i] = new int[counts[i]];
+			counts[i] = 0;
+		}
+		for (int i = 0; i < relation.length; i++) {
+			for (int blocker : relation[i]) {
+				inverted[blocker][counts[blocker]++] = i;
+			}
+		}
+		return inverted;
+	}
+
+	/**
+	 * Returns the number of positions in this layout
+	 *
+	 * @return
+	 */
+	public int size() {
+		return xs.length;
+	}
+
+	public int getX(int position) {
+		return xs[position];
+	}
+
+	public int getY(int position) {
+		return ys[position];
+	}
+
+	public int getZ(int position) {
+		return zs[position];
+	}
+
+	/**
+	 * Returns the positions that have to be empty before the given position
+	 * is uncovered. The arrays returned by this and the other blocking methods
+	 * are shared, don't change them
+	 *
+	 * @param position
+	 * @return
+	 */
+	public int[] getAbove(int position) {
+		return above[position];
+	}
+
+	/**
+	 * Returns the positions that have to be empty for the given position to
+	 * be clear on its left side
+	 *
+	 * @param position
+	 * @return
+	 */
+	public int[] getLeft(int position) {
+		return left[position];
+	}
+
+	/**
+	 * Returns the positions that have to be empty for the given position to
+	 * be clear on its right side
+	 *
+	 * @param position
+	 * @return
+	 */
+	public int[] getRight(int position) {
+		return right[position];
+	}
+
+	/**
+	 * Returns the positions the given position is on top of
+	 *
+	 * @param position
+	 * @return
+	 */
+	public int[] getBelow(int position) {
+		return below[position];
+	}
+
+	/**
+	 * Returns the positions the given position closes off from the left
+	 *
+	 * @param position
+	 * @return
+	 */
+	public int[] getRightNeighbours(int position) {
+		return rightNeighbours[position];
+	}
+
+	/**
+	 * Returns the positions the given position closes off from the right
+	 *
+	 * @param position
+	 * @return
+	 */
+	public int[] getLeftNeighbours(int position) {
+		return leftNeighbours[position];
+	}
+
+	/**
+	 * Returns the layout compiled to bit masks
+	 *
+	 * @return the bitboard, or null if the layout has too many positions
+	 */
+	public Bitboard getBitboard() {
+		return bitboard;
+	}
+
+	/**
+	 * Gets the position at the given coordinates
+	 *
+	 * @param xPos
+	 * @param yPos
+	 * @param zPos
+	 * @return the position, or -1 if the layout has no tile there
+	 */
+	public int indexOf(int xPos, int yPos, int zPos) {
+		int x = xPos - minX;
+		int y = yPos - minY;
+		int z = zPos - minZ;
+		if (x < 0 || x >= width || y < 0 || y >= depth || z < 0) {
+			return -1;
+		}
+		int cell = (z * depth + y) * width + x;
+		return cell < cells.length ? cells[cell] : -1;
+	}
+
+	private int cell(int xPos, int yPos, int zPos) {
+		return ((zPos - minZ) * depth + (yPos - minY)) * width + (xPos - minX);
+	}
+
+	/**
+	 * Walks the turtle from the top middle tile down through the layers,
+	 * which is the order the tiles have always been dealt in
+	 *
+	 * @return
+	 */
+	private static Layout createTurtle() {
+		int size = 144;
+		int[] xs = new int[size];
+		int[] ys = new int[size];
+		int[] zs = new int[size];
+
+		// Start at the top middle tile
+		int[] positions = new int[]{0, 0, 0};
+		for (int i = 0; i < size; i++) {
+			xs[i] = positions[0];
+			ys[i] = positions[1];
+			zs[i] = positions[2];
+			positions = getNewPositions(positions[0], positions[1], positions[2]);
+		}
+
+		return new Layout(xs, ys, zs);
+	}
+
+	/**
+	 * This method handles the logic behind adding the coordinates for tiles,
+	 * for example the transition from layer to layer, and the three special
+	 * case tiles
+	 *
+	 * @param currentXPos
+	 * @param currentYPos
+	 * @param currentZPos
+	 * @return a three element array, with 0 being the new xPos, 1 being the new
+	 * yPos, and 2 being the new zPos
+	 */
+	private static int[] getNewPositions(int currentXPos, int currentYPos, int currentZPos) {
+		int maxX;
+		int maxY;
+
+		switch (currentZPos) {
+			case 0:
+				maxX = 0;
+				maxY = 0;
+				break;
+			case 1:
+				maxX = 1;
+				maxY = 1;
+				break;
+			case 2:
+				maxX = 2;
+				maxY = 2;
+				break;
+			case 3:
+				maxX = 3;
+				maxY = 3;
+				break;
+			case 4:
+				maxY = 4;
+				switch (Math.abs(currentYPos)) {
+					case 1:
+					// Intentional fall-through, both have max as 6
+					case 4:
+						maxX = 6;
+						break;
+					case 2:
+						maxX = 5;
+						break;
+					case 3:
+						maxX = 4;
+						break;
+					default:
+						maxX = 0;
+				}
+				break;
+			default:
+				maxX = 0;
+				maxY = 0;
+				break;
+		}
+
+		int absXPos = Math.abs(currentXPos);
+		int absYPos = Math.abs(currentYPos);
+
+		if (currentZPos == 0) {
+			currentXPos = 1;
+			currentYPos = 1;
+			currentZPos = 1;
+		} // For the middle three layers, it's just a square
+		else {
+			// Adds or subtracts one from the current x if we haven't reached
+			// the end of the row
+			if (currentYPos != 0 && absXPos < maxX) {
+				// This is either 1 or -1, depending on which direction we are
+				// going already
+				currentXPos += currentXPos / absXPos;
+			} // Otherwise, we have to decide whether to add/subtract one for y,
+			// or whether the y side is done and we need to start at the next
+			// center tile
+			else if (currentYPos != 0 && absYPos < maxY) {
+				currentYPos += currentYPos / absYPos;
+				currentXPos = currentXPos / absXPos;
+			} else if (currentXPos > 0 && currentYPos > 0) {
+				currentXPos = 1;
+				currentYPos = -1;
+			} else if (currentXPos > 0 && currentYPos < 0) {
+				currentXPos = -1;
+				currentYPos = -1;
+			} else if (currentXPos < 0 && currentYPos < 0) {
+				currentXPos = -1;
+				currentYPos = 1;
+			} else if (currentXPos < 0 && currentYPos > 0 && currentZPos <= 4) {
+				currentXPos = 1;
+				currentYPos = 1;
+				currentZPos++;
+			} // The three special case tiles are inserted here
+			else if (currentZPos == 4 && currentYPos == 0) {
+				switch (currentXPos) {
+					case -7:
+						currentXPos = 7;
+						break;
+					case 7:
+						currentXPos = 8;
+						break;
+					default:
+						break;
+				}
+			}
+
+			// This catches us if we started going one layer too deep
+			if (currentZPos == 5) {
+				currentXPos = -7;
+				currentYPos = 0;
+				currentZPos = 4;
+			}
+		}
+
+		int[] positions = new int[]{currentXPos, currentYPos, currentZPos};
+		return positions;
+	}
+}
@@ -0,0 +1,92 @@
+/**
+ * Looks a few moves ahead and makes the move that leads to the most open
+ * tiles, counting a cleared board as the best outcome there is and a stuck
+ * one as the worst. A group with all its remaining tiles open is cleared
+ * without looking
+ */
+public class LookaheadStrategy implements Strategy {
+
+	/**
+	 * The default number of moves to look ahead, counting the one being chosen
+	 */
+	public static final int DEFAULT_DEPTH = 3;
+
+	private static final int WON = 1000000;
+	private static final int STUCK = -1000000;
+
+	private final int depth;
+	// Move lists for every level of the search, so nothing is allocated
+	private final int[][] levels;
+
+	public LookaheadStrategy() {
+		this(DEFAULT_DEPTH);
+	}
+
+	/**
+	 * Creates a strategy that looks the given number of moves ahead
+	 *
+	 * @param depth
+	 */
+	public LookaheadStrategy(int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("Can't look ahead " + depth + " moves");
+		}
+		this.depth = depth;
+		levels = new int[depth][MahjongEngine.MAX_MOVES * 2];
+	}
+
+	@Override
+	public String getName() {
+		return "lookahead-" + depth;
+	}
+
+	@Override
+	public int chooseMove(MahjongEngine engine, int[] moves, int count) {
+		int best = 0;
+		int bestValue = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			int group = engine.getMatchGroupAt(moves[i * 2]);
+			if (engine.getOpenCount(group) == engine.getRemainingCount(group)) {
+				return i;
+			}
+			engine.play(moves[i * 2], moves[i * 2 + 1]);
+			int value = value(engine, 1);
+			engine.takeBack();
+			if (value > bestValue) {
+				best = i;
+				bestValue = value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the best the player can do from a position within the moves
+	 * left to look at
+	 *
+	 * @param engine
+	 * @param level how many moves have been made so far
+	 * @return
+	 */
+	private int value(MahjongEngine engine, int level) {
+		if (engine.getRemainingCount() == 0) {
+			// Sooner is better, so the strategy doesn't dawdle
+			return WON - level;
+		}
+		int[] moves = levels[level - 1];
+		int count = engine.getMoves(moves);
+		if (count == 0) {
+			return STUCK + engine.getOpenCount();
+		}
+		if (level == depth) {
+			return engine.getOpenCount() * 4 + count;
+		}
+		int best = Integer.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			engine.play(moves[i * 2], moves[i * 2 + 1]);
+			best = Math.max(best, value(engine, level + 1));
+			engine.takeBack();
+		}
+		return best;
+	}
+}
@@ -1,11 +1,15 @@
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.EventQueue;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.Random;
+import javax.swing.ButtonGroup;
 import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JFrame;
 import javax.swing.JMenu;
@@ -13,9 +17,11 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.KeyStroke;
+import javax.swing.SwingWorker;
 
 
 public class MahjongBoard extends JFrame {
@@ -25,12 +31,71 @@ public class MahjongBoard extends JFrame {
 	private static final int BOARD_HEIGHT = 800;
 	private GamePanel gamePanel;
 
+	// The scanned table of winnable games, or null if there isn't one
+	private final WinnableSeeds winnableSeeds =
+			WinnableSeeds.open(new File(WinnableSeeds.DEFAULT_DIRECTORY));
+	private boolean winnableOnly = false;
+	// Endgames EndgameTableBuilder has solved, or null if it hasn't been run
+	private final EndgameTable endgames =
+			EndgameTable.open(new File(WinnableSeeds.DEFAULT_DIRECTORY));
+	// Positions solved in this run or an earlier one, or null if the file
+	// couldn't be opened or another game has it
+	private final SolverCache resultCache =
+			SolverCache.open(SolverCache.getUserDirectory(), SolverCache.DEFAULT_BITS);
+	// Whether new games are built winnable by ReverseDealer
+	private boolean buildWinnable = false;
+
+	// The difficulty new games are picked for, or null for any game. The
+	// scanned ratings are used when there are some, otherwise games are
+	// rated until one fits
+	private static final long FIND_TIME_LIMIT = 3000;
+	private final DifficultyTable difficultyTable =
+			DifficultyTable.open(new File(WinnableSeeds.DEFAULT_DIRECTORY));
+	private final DifficultyRater rater = new DifficultyRater();
+	private DifficultyRating.Band difficulty = null;
+	private SwingWorker<Long, Void> gameFinder = null;
+
+	// Estimates the hinted move's chance of winning
+	private final MonteCarloEvaluator evaluator = new MonteCarloEvaluator();
+
+	// Checks after every move whether the game can still be won
+	private final SolvabilityMonitor monitor = new SolvabilityMonitor(
+			new SolvabilityMonitor.Listener() {
+		@Override
+		public void solvabilityChecked(long hash, SolverResult result) {
+			// A check that some other position asked for, such as the last
+			// game's, says nothing about this one
+			if (hash != gamePanel.getPositionHash()) {
+				return;
+			}
+			gamePanel.setWinningLine(result.isWinnable() ? result.getMoves() : null);
+			switch (result.getOutcome()) {
+			case WINNABLE:
+				status = "still winnable";
+				break;
+			case UNWINNABLE:
+				status = "lost";
+				break;
+			default:
+				status = "too hard to tell";
+				break;
+			}
+			updateTitle();
+			checkEnabledMenus();
+			offerAutoFinish();
+		}
+	});
+	private String status = "checking...";
+
 	// File has New game, then a separator before these items
 	private final int UNDO_INDEX = 4;
 	private final int REDO_INDEX = UNDO_INDEX + 1;
-	private final int HINT_INDEX = REDO_INDEX + 1;
+	private final int REWIND_INDEX = REDO_INDEX + 1;
+	private final int HINT_INDEX = REWIND_INDEX + 1;
+	private final int BEST_MOVE_INDEX = HINT_INDEX + 1;
+	private final int FINISH_INDEX = BEST_MOVE_INDEX + 1;
 	// Save menu item is after a separator
-	private final int SAVE_INDEX = HINT_INDEX + 2;
+	private final int SAVE_INDEX = FINISH_INDEX + 2;
 
 	private final String title = "Marsh-jong: \t";
 	private final String operationString = "This help text describes the operation of the MahJong game. \n" +
@@ -39,11 +104,20 @@ public class MahjongBoard extends JFrame {
 			"\tNew Numbered Game: Starts a specific game with the number given by the user - the number for any given game can be found in the title bar while the game is in play.\n" +
 			"\tRestart: Restarts the current game without retaining any memory of redo or undo operations.\n" +
 			"\tUndo/Redo: Performs one undo or redo operation, if available.\n" +
+			"\tUndo to Last Winnable: Undoes as many moves as it takes to get back to a position that can still be won.\n" +
+			"\tHint: Highlights a possible move, along with the share of quick practice games that were won after making it.\n" +
+			"\tAuto Finish: Once the rest of the game is known to be won, plays it out for you. It is offered when only a few tiles are left.\n" +
+			"\tBest Move: Looks ahead for a moment and highlights the move most likely to lead to a win.\n" +
 			"\tSave Game: Not yet implemented.\n" +
-			"\tExit Game: Closes the game and exits.\n\n" +
+			"\tExit Game: Closes the game and exits.\n" +
+			"\tWhen there are no moves left, Shuffle Remaining rearranges the tiles still on the board into a layout that can be won. Undo and Redo start over from there.\n\n" +
 			"OPTIONS MENU:\n" +
 			"\tRounded Corners: Sets whether the tiles will be square or have rounded corners.\n" +
+			"\tSingle Canvas: Paints the whole board in one go, repainting only the tiles that change, instead of drawing each tile separately. The game plays the same either way.\n" +
 			"\tSound: Sets the sound on or off.\n" +
+			"\tWinnable Deals Only: New games are picked from the games SeedScanner has found can be won. Disabled until a scan has been run.\n" +
+			"\tDifficulty: New games are rated easy, medium or hard from how much searching and how much luck it takes to win them, and only games of the chosen difficulty are dealt. Games rated by SeedScanner are picked straight away, otherwise it can take a moment to find one.\n" +
+			"\tBuild Winnable Deals: New games are built backwards from an empty board, so they can always be won. The same game number builds a different game than it shuffles, and the title marks built games. Restart keeps the way the game was dealt.\n" +
 			"\tHigh Scores: Displays the high scores.\n" +
 			"\tRemoved Tiles: Displays the window with the tiles that have been removed. This menu is disabled while the panel is visible. Close it to re-enable.\n\n";
 	private final String rulesString = "This help text describes the rules of MahJong.\n\n" +
@@ -131,7 +205,7 @@ public class MahjongBoard extends JFrame {
 						JOptionPane.YES_NO_OPTION
 						);
 				if (selection == 0) {
-					newGame(gamePanel.gameNumber);
+					newGame(gamePanel.gameNumber, gamePanel.built);
 				}
 			}
 		});
@@ -165,6 +239,17 @@ public class MahjongBoard extends JFrame {
 		item.setEnabled(gamePanel.canRedo());
 		menu.add(item, REDO_INDEX);
 
+		item = new JMenuItem("Undo to Last Winnable");
+		item.setToolTipText("Undoes back to the latest position that can still be won.");
+		item.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				gamePanel.undoToLastWinnable();
+			}
+		});
+		item.setEnabled(gamePanel.canUndo());
+		menu.add(item, REWIND_INDEX);
+
 		item = new JMenuItem("Hint");
 		item.setMnemonic(KeyEvent.VK_H);
 		item.setToolTipText("Highlights a possible move.");
@@ -178,6 +263,31 @@ public class MahjongBoard extends JFrame {
 		});
 		menu.add(item, HINT_INDEX);
 
+		item = new JMenuItem("Best Move");
+		item.setMnemonic(KeyEvent.VK_B);
+		item.setToolTipText("Thinks for a moment, then highlights the best move it finds.");
+		item.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (gamePanel.allowHint(((JMenuItem) e.getSource()).getTopLevelAncestor())) {
+					gamePanel.hint(true, true);
+				}
+			}
+		});
+		menu.add(item, BEST_MOVE_INDEX);
+
+		item = new JMenuItem("Auto Finish");
+		item.setMnemonic(KeyEvent.VK_A);
+		item.setToolTipText("Plays out the rest of the game once it is known to be won.");
+		item.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				gamePanel.autoFinish();
+			}
+		});
+		item.setEnabled(false);
+		menu.add(item, FINISH_INDEX);
+
 		menu.addSeparator();
 
 		item = new JMenuItem("Save Game");
@@ -223,6 +333,21 @@ public class MahjongBoard extends JFrame {
 		});
 		menu.add(item);
 
+		item = new JCheckBoxMenuItem("Single Canvas");
+		item.setMnemonic(KeyEvent.VK_C);
+		item.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (!(e.getSource() instanceof JCheckBoxMenuItem)) {
+					return;
+				}
+
+				JCheckBoxMenuItem checkbox = (JCheckBoxMenuItem) e.getSource();
+				gamePanel.setSingleCanvas(checkbox.isSelected());
+			}
+		});
+		menu.add(item);
+
 		item = new JCheckBoxMenuItem("Sound");
 		((JCheckBoxMenuItem) item).setSelected(true);
 		item.addActionListener(new ActionListener() {
@@ -238,6 +363,61 @@ public class MahjongBoard extends JFrame {
 		});
 		menu.add(item);
 
+		item = new JCheckBoxMenuItem("Winnable Deals Only");
+		item.setMnemonic(KeyEvent.VK_W);
+		if (winnableSeeds == null) {
+			item.setEnabled(false);
+			item.setToolTipText("Run SeedScanner to find out which games can be won.");
+		} else {
+			item.setToolTipText("New games are always ones that can be won.");
+		}
+		item.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				winnableOnly = ((JCheckBoxMenuItem) e.getSource()).isSelected();
+			}
+		});
+		menu.add(item);
+
+		item = new JCheckBoxMenuItem("Build Winnable Deals");
+		item.setMnemonic(KeyEvent.VK_B);
+		item.setToolTipText("New games are built backwards so that they can always be won.");
+		item.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				buildWinnable = ((JCheckBoxMenuItem) e.getSource()).isSelected();
+			}
+		});
+		menu.add(item);
+
+		JMenu difficultyMenu = new JMenu("Difficulty");
+		difficultyMenu.setMnemonic(KeyEvent.VK_D);
+		ButtonGroup difficulties = new ButtonGroup();
+		item = new JRadioButtonMenuItem("Any");
+		item.setSelected(true);
+		item.setToolTipText("New games can be of any difficulty.");
+		item.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				difficulty = null;
+			}
+		});
+		difficulties.add(item);
+		difficultyMenu.add(item);
+		for (final DifficultyRating.Band band : DifficultyRating.Band.values()) {
+			item = new JRadioButtonMenuItem(band.toString());
+			item.setToolTipText("New games are rated " + band.toString().toLowerCase() + ".");
+			item.addActionListener(new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					difficulty = band;
+				}
+			});
+			difficulties.add(item);
+			difficultyMenu.add(item);
+		}
+		menu.add(difficultyMenu);
+
 		menu.addSeparator();
 
 		item = new JMenuItem("High Scores");
@@ -339,7 +519,13 @@ public class MahjongBoard extends JFrame {
 			}
 		});
 
-	setTitle(title + gamePanel.gameNumber);
+		monitor.setEndgameTable(endgames);
+		monitor.setResultCache(resultCache);
+		gamePanel.setEndgameTable(endgames);
+		gamePanel.setResultCache(resultCache);
+		gamePanel.setMonitor(monitor);
+		gamePanel.setEvaluator(evaluator);
+		updateTitle();
 		setResizable(false);
 		setVisible(true);
 	}
@@ -361,22 +547,31 @@ public class MahjongBoard extends JFrame {
 	 * the last possible tile set is removed
 	 */
 	public void checkEndGame() {
-		String[] options = {"New Game", "Cancel", "Exit Game"};
+		boolean tilesLeft = gamePanel.getRemainingTileCount() > 0;
+		String[] options = tilesLeft
+				? new String[]{"New Game", "Shuffle Remaining", "Cancel", "Exit Game"}
+				: new String[]{"New Game", "Cancel", "Exit Game"};
 		int selection = JOptionPane.showOptionDialog(this, "No more moves exist.\n" +
 				"Choose Cancel to go back to this game, otherwise " +
-				"choose New Game or Exit Game.", "End Game",
+				"choose New Game or Exit Game." +
+				(tilesLeft ? "\nShuffle Remaining rearranges the tiles left " +
+				"so that the game can be won." : ""), "End Game",
 				JOptionPane.YES_NO_CANCEL_OPTION, JOptionPane.QUESTION_MESSAGE,
 				null, options, options[0]);
 
 		gamePanel.stopFireworks();
-		switch (selection) {
-		case 0:
+		String choice = selection < 0 ? "Cancel" : options[selection];
+		switch (choice) {
+		case "New Game":
 			newGame();
 			break;
-		case 2:
+		case "Shuffle Remaining":
+			gamePanel.shuffleRemaining();
+			break;
+		case "Exit Game":
 			close();
 			break;
-		case 1:
+		case "Cancel":
 			// Intentional fall-through
 		default:
 			break;
@@ -390,6 +585,34 @@ public class MahjongBoard extends JFrame {
 		menu.getMenuComponent(UNDO_INDEX).setEnabled(gamePanel.canUndo());
 		menu.getMenuComponent(REDO_INDEX)
 				.setEnabled(gamePanel.canRedo());
+		menu.getMenuComponent(REWIND_INDEX).setEnabled(gamePanel.canUndo());
+		menu.getMenuComponent(FINISH_INDEX).setEnabled(gamePanel.canAutoFinish());
+	}
+
+	/**
+	 * Asks whether to play out the rest of the game, once it's known to be
+	 * won and there isn't much of it left
+	 */
+	private void offerAutoFinish() {
+		if (!gamePanel.shouldOfferAutoFinish()) {
+			return;
+		}
+		int selection = JOptionPane.showConfirmDialog(this,
+				"The rest of this game can be won. Finish it automatically?",
+				"Auto Finish",
+				JOptionPane.YES_NO_OPTION);
+		if (selection == 0) {
+			gamePanel.autoFinish();
+			checkEnabledMenus();
+		}
+	}
+
+	/**
+	 * Shows the game number and whether the game can still be won
+	 */
+	private void updateTitle() {
+		setTitle(title + gamePanel.gameNumber + (gamePanel.built ? " (built)" : "")
+				+ " - " + status);
 	}
 
 	private void close() {
@@ -397,31 +620,101 @@ public class MahjongBoard extends JFrame {
 		Toolkit.getDefaultToolkit().getSystemEventQueue().postEvent(event);
 	}
 	private void newGame() {
+		if (difficulty != null) {
+			findGame(difficulty);
+			return;
+		}
+		if (winnableOnly && winnableSeeds != null && !buildWinnable) {
+			long seed = winnableSeeds.pick(new Random());
+			if (seed >= 0) {
+				newGame(seed);
+				return;
+			}
+		}
 		newGame(null);
 	}
 	private void newGame(Long randomNumber) {
+		newGame(randomNumber, buildWinnable);
+	}
+	/**
+	 * Starts a game rated in the given band. A scanned one is picked if there
+	 * is one, otherwise random games are rated in the background until one
+	 * fits or time is up
+	 *
+	 * @param band
+	 */
+	private void findGame(final DifficultyRating.Band band) {
+		if (!buildWinnable && difficultyTable != null) {
+			long seed = difficultyTable.pick(band, new Random());
+			if (seed >= 0) {
+				newGame(seed);
+				return;
+			}
+		}
+		if (gameFinder != null) {
+			return;
+		}
+
+		final boolean built = buildWinnable;
+		status = "finding " + band.toString().toLowerCase() + " game...";
+		updateTitle();
+		gameFinder = new SwingWorker<Long, Void>() {
+			@Override
+			protected Long doInBackground() {
+				return rater.findGame(band, built, new Random(), FIND_TIME_LIMIT, null);
+			}
+
+			@Override
+			protected void done() {
+				gameFinder = null;
+				long seed = -1;
+				try {
+					seed = get();
+				} catch (Exception e) {
+					System.err.println("Couldn't find a game: " + e);
+				}
+				newGame(seed < 0 ? null : seed, built);
+			}
+		};
+		gameFinder.execute();
+	}
+	private void newGame(Long randomNumber, boolean built) {
 		boolean roundedCorners = gamePanel.hasRoundedCorners();
+		boolean singleCanvas = gamePanel.isSingleCanvas();
+		gamePanel.dispose();
 		remove(gamePanel);
 
 		int width = getContentPane().getWidth();
 		int height = getContentPane().getHeight();
 
-		if (randomNumber == null) {
-			gamePanel = new GamePanel(width, height, roundedCorners);
-		}
-		else {
-			gamePanel = new GamePanel(width, height, roundedCorners, randomNumber);
-		}
+		gamePanel = new GamePanel(width, height, roundedCorners, randomNumber, built);
+		gamePanel.setSingleCanvas(singleCanvas);
 
 		add(gamePanel);
 
 		checkEnabledMenus();
 
-		setTitle(title + gamePanel.gameNumber);
+		status = "checking...";
+		gamePanel.setEndgameTable(endgames);
+		gamePanel.setResultCache(resultCache);
+		gamePanel.setMonitor(monitor);
+		gamePanel.setEvaluator(evaluator);
+		updateTitle();
 		repaint();
 	}
 
 	public static void main(String[] args) {
+		// Load the pictures and draw the tiles while the window is being put
+		// together, rather than holding up its first paint. Drawing the tiles
+		// makes Tile components, so it happens on the event dispatch thread,
+		// queued ahead of anything the window puts there
+		PictureTile.preload();
+		EventQueue.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				TileAtlas.getInstance();
+			}
+		});
 		new MahjongBoard();
 	}
 
@@ -0,0 +1,672 @@
+import java.util.Random;
+
+/**
+ * The game itself, without any Swing. Tiles are referred to by their position
+ * in the layout and faces by their TileFace number, so a board can be dealt,
+ * checked and played without creating a single component. GamePanel keeps one
+ * of these and only renders what it says
+ */
+public class MahjongEngine {
+
+	/**
+	 * The most moves there can be at once, with all four tiles of every group
+	 * open. An array of twice this many ints holds any list of moves
+	 */
+	public static final int MAX_MOVES = TileFace.GROUP_COUNT * 6;
+
+	// How many backgrounds GamePanel chooses from for each game
+	private static final int BACKGROUND_COUNT = 7;
+
+	// Zobrist keys, one per position and match group. The seed is fixed so a
+	// position hashes the same from one run to the next
+	private static final long ZOBRIST_SEED = 0x4d61727368L;
+	private static final long[] ZOBRIST = zobristKeys(Bitboard.MAX_POSITIONS);
+
+	private final Layout layout;
+	private final int[] faces;
+	private final int[] groups;
+	private final boolean[] occupied;
+	private int remaining;
+	private final int[] groupRemaining;
+
+	// The XOR of the keys of every tile on the board
+	private final long[] keys;
+	private long hash;
+
+	// The occupied positions again as a bitboard, if the layout has one
+	private final Bitboard bitboard;
+	private final long[] board;
+
+	// How many of the tiles in each of a position's blocking lists are still
+	// on the board, kept up to date as tiles come and go
+	private final int[] aboveCount;
+	private final int[] leftCount;
+	private final int[] rightCount;
+
+	// The occupied positions that are open, in no particular order, and where
+	// each position sits in that list (or -1)
+	private final int[] open;
+	private final int[] openIndex;
+	private int openCount;
+
+	// The open tiles again, bucketed by match group, and the groups that have
+	// at least two open tiles and so at least one move
+	private final int[][] groupOpen;
+	private final int[] groupOpenCount;
+	private final int[] groupIndex;
+	private final int[] movable;
+	private final int[] movableIndex;
+	private int movableCount;
+
+	// Positions in the order they were removed, and the ones undone since
+	private final int[] removed;
+	private int removedCount;
+	private final int[] restored;
+	private int restoredCount;
+
+	public MahjongEngine() {
+		this(Layout.TURTLE);
+	}
+
+	public MahjongEngine(Layout layout) {
+		this.layout = layout;
+		faces = new int[layout.size()];
+		groups = new int[layout.size()];
+		occupied = new boolean[layout.size()];
+		groupRemaining = new int[TileFace.GROUP_COUNT];
+		keys = layout.size() <= Bitboard.MAX_POSITIONS ? ZOBRIST
+				: zobristKeys(layout.size());
+		bitboard = layout.getBitboard();
+		board = bitboard == null ? null : new long[Bitboard.WORDS];
+		aboveCount = new int[layout.size()];
+		leftCount = new int[layout.size()];
+		rightCount = new int[layout.size()];
+		open = new int[layout.size()];
+		openIndex = new int[layout.size()];
+		groupOpen = new int[TileFace.GROUP_COUNT][layout.size()];
+		groupOpenCount = new int[TileFace.GROUP_COUNT];
+		groupIndex = new int[layout.size()];
+		movable = new int[TileFace.GROUP_COUNT];
+		movableIndex = new int[TileFace.GROUP_COUNT];
+		removed = new int[layout.size()];
+		restored = new int[layout.size()];
+	}
+
+	/**
+	 * Creates an independent copy of another engine, history and all
+	 *
+	 * @param other
+	 */
+	public MahjongEngine(MahjongEngine other) {
+		this(other.layout);
+		copyFrom(other);
+	}
+
+	/**
+	 * Makes this engine the same as another one on the same layout, without
+	 * allocating anything
+	 *
+	 * @param other
+	 */
+	public void copyFrom(MahjongEngine other) {
+		if (other.layout != layout) {
+			throw new IllegalArgumentException("Can only copy an engine on the same layout");
+		}
+		int size = layout.size();
+		System.arraycopy(other.faces, 0, faces, 0, size);
+		System.arraycopy(other.groups, 0, groups, 0, size);
+		System.arraycopy(other.occupied, 0, occupied, 0, size);
+		remaining = other.remaining;
+		System.arraycopy(other.groupRemaining, 0, groupRemaining, 0, TileFace.GROUP_COUNT);
+		hash = other.hash;
+		if (board != null) {
+			System.arraycopy(other.board, 0, board, 0, Bitboard.WORDS);
+		}
+		System.arraycopy(other.aboveCount, 0, aboveCount, 0, size);
+		System.arraycopy(other.leftCount, 0, leftCount, 0, size);
+		System.arraycopy(other.rightCount, 0, rightCount, 0, size);
+		System.arraycopy(other.open, 0, open, 0, size);
+		System.arraycopy(other.openIndex, 0, openIndex, 0, size);
+		openCount = other.openCount;
+		for (int group = 0; group < TileFace.GROUP_COUNT; group++) {
+			System.arraycopy(other.groupOpen[group], 0, groupOpen[group], 0,
+					other.groupOpenCount[group]);
+		}
+		System.arraycopy(other.groupOpenCount, 0, groupOpenCount, 0, TileFace.GROUP_COUNT);
+		System.arraycopy(other.groupIndex, 0, groupIndex, 0, size);
+		System.arraycopy(other.movable, 0, movable, 0, TileFace.GROUP_COUNT);
+		System.arraycopy(other.movableIndex, 0, movableIndex, 0, TileFace.GROUP_COUNT);
+		movableCount = other.movableCount;
+		System.arraycopy(other.removed, 0, removed, 0, size);
+		removedCount = other.removedCount;
+		System.arraycopy(other.restored, 0, restored, 0, size);
+		restoredCount = other.restoredCount;
+	}
+
+	private static long[] zobristKeys(int positions) {
+		Random random = new Random(ZOBRIST_SEED);
+		long[] keys = new long[positions * TileFace.GROUP_COUNT];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = random.nextLong();
+		}
+		return keys;
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	/**
+	 * Deals a numbered game exactly as the game panel does, so a game can be
+	 * looked at without one
+	 *
+	 * @param gameNumber
+	 */
+	public void deal(long gameNumber) {
+		Random random = new Random(gameNumber);
+		// The panel picks its background from the same random before dealing
+		random.nextInt(BACKGROUND_COUNT);
+		deal(random);
+	}
+
+	/**
+	 * Builds a numbered game with ReverseDealer exactly as the game panel does
+	 * when it only deals winnable games
+	 *
+	 * @param gameNumber
+	 */
+	public void dealWinnable(long gameNumber) {
+		Random random = new Random(gameNumber);
+		random.nextInt(BACKGROUND_COUNT);
+		deal(new ReverseDealer(layout).deal(random));
+	}
+
+	/**
+	 * Deals a full deck onto the layout, shuffled with the given random
+	 *
+	 * @param random the game's random, used exactly as the old deck shuffle
+	 * used it so that numbered games keep dealing the same tiles
+	 */
+	public void deal(Random random) {
+		int[] deck = TileFace.newDeck();
+		if (deck.length != layout.size()) {
+			throw new IllegalStateException("The deck has " + deck.length +
+					" tiles but the layout has " + layout.size() + " positions");
+		}
+
+		// The same swaps Collections.shuffle makes on a list of this size
+		for (int i = deck.length; i > 1; i--) {
+			int j = random.nextInt(i);
+			int temp = deck[i - 1];
+			deck[i - 1] = deck[j];
+			deck[j] = temp;
+		}
+
+		deal(deck);
+	}
+
+	/**
+	 * Puts the given faces onto the layout, in position order, and clears the
+	 * undo and redo history
+	 *
+	 * @param deck a face for every position
+	 */
+	public void deal(int[] deck) {
+		System.arraycopy(deck, 0, faces, 0, faces.length);
+		hash = 0;
+		for (int group = 0; group < TileFace.GROUP_COUNT; group++) {
+			groupRemaining[group] = 0;
+		}
+		for (int i = 0; i < occupied.length; i++) {
+			groups[i] = TileFace.getGroup(faces[i]);
+			occupied[i] = true;
+			groupRemaining[groups[i]]++;
+			hash ^= keys[i * TileFace.GROUP_COUNT + groups[i]];
+		}
+		if (bitboard != null) {
+			bitboard.fill(board);
+		}
+		remaining = faces.length;
+		removedCount = 0;
+		restoredCount = 0;
+		recount();
+	}
+
+	/**
+	 * Shuffles the faces of the tiles still on the board between their
+	 * positions. The undo and redo history is cleared, since it would put
+	 * back tiles around the new faces
+	 *
+	 * @param random
+	 */
+	public void shuffleRemaining(Random random) {
+		int[] positions = new int[remaining];
+		int count = 0;
+		for (int i = 0; i < occupied.length; i++) {
+			if (occupied[i]) {
+				positions[count++] = i;
+			}
+		}
+		for (int i = count; i > 1; i--) {
+			int j = random.nextInt(i);
+			int temp = faces[positions[i - 1]];
+			faces[positions[i - 1]] = faces[positions[j]];
+			faces[positions[j]] = temp;
+		}
+
+		hash = 0;
+		for (int position : positions) {
+			groups[position] = TileFace.getGroup(faces[position]);
+			hash ^= keys[position * TileFace.GROUP_COUNT + groups[position]];
+		}
+		removedCount = 0;
+		restoredCount = 0;
+		recount();
+	}
+
+	/**
+	 * Recomputes the blocking counts and the open positions from scratch
+	 */
+	private void recount() {
+		openCount = 0;
+		movableCount = 0;
+		for (int group = 0; group < TileFace.GROUP_COUNT; group++) {
+			groupOpenCount[group] = 0;
+			movableIndex[group] = -1;
+		}
+		for (int i = 0; i < faces.length; i++) {
+			aboveCount[i] = count(layout.getAbove(i));
+			leftCount[i] = count(layout.getLeft(i));
+			rightCount[i] = count(layout.getRight(i));
+			openIndex[i] = -1;
+			if (occupied[i] && isOpen(i)) {
+				addOpen(i);
+			}
+		}
+	}
+
+	private int count(int[] positions) {
+		int count = 0;
+		for (int position : positions) {
+			if (occupied[position]) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public int getFace(int position) {
+		return faces[position];
+	}
+
+	public boolean isOccupied(int position) {
+		return position >= 0 && occupied[position];
+	}
+
+	/**
+	 * Copies the occupied positions into a bitboard, in the bit order of the
+	 * layout's Bitboard
+	 *
+	 * @param occupied filled with the board
+	 * @return false if the layout is too big for a bitboard
+	 */
+	public boolean getBoard(long[] occupied) {
+		if (bitboard == null) {
+			return false;
+		}
+		System.arraycopy(board, 0, occupied, 0, Bitboard.WORDS);
+		return true;
+	}
+
+	/**
+	 * Returns the number of tiles still on the board
+	 *
+	 * @return
+	 */
+	public int getRemainingCount() {
+		return remaining;
+	}
+
+	/**
+	 * Returns the number of tiles of a match group still on the board
+	 *
+	 * @param group
+	 * @return
+	 */
+	public int getRemainingCount(int group) {
+		return groupRemaining[group];
+	}
+
+	/**
+	 * Returns the Zobrist hash of the tiles on the board, which only depends
+	 * on which match groups are at which positions
+	 *
+	 * @return
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	public int getRemovedCount() {
+		return removedCount;
+	}
+
+	/**
+	 * Returns the removed position at the given depth in the history, 0 being
+	 * the first tile removed
+	 *
+	 * @param index
+	 * @return
+	 */
+	public int getRemoved(int index) {
+		return removed[index];
+	}
+
+	/**
+	 * Checks whether the tiles at two different positions can be removed
+	 * together
+	 *
+	 * @param position1
+	 * @param position2
+	 * @return
+	 */
+	public boolean matches(int position1, int position2) {
+		return position1 != position2
+				&& groups[position1] == groups[position2];
+	}
+
+	/**
+	 * Checks whether the tile at a position is free to be removed, which is
+	 * when nothing is on top of it and at least one of its sides is clear
+	 *
+	 * @param position
+	 * @return
+	 */
+	public boolean isOpen(int position) {
+		return aboveCount[position] == 0
+				&& (leftCount[position] == 0 || rightCount[position] == 0);
+	}
+
+	/**
+	 * Returns the number of tiles that are on the board and open
+	 *
+	 * @return
+	 */
+	public int getOpenCount() {
+		return openCount;
+	}
+
+	/**
+	 * Returns one of the open tiles
+	 *
+	 * @param index from 0 to getOpenCount() - 1, the order changes as tiles
+	 * are removed and put back
+	 * @return the position of the tile
+	 */
+	public int getOpen(int index) {
+		return open[index];
+	}
+
+	private void addOpen(int position) {
+		openIndex[position] = openCount;
+		open[openCount++] = position;
+
+		int group = groups[position];
+		groupIndex[position] = groupOpenCount[group];
+		groupOpen[group][groupOpenCount[group]++] = position;
+		if (groupOpenCount[group] == 2) {
+			movableIndex[group] = movableCount;
+			movable[movableCount++] = group;
+		}
+	}
+
+	private void removeOpen(int position) {
+		int index = openIndex[position];
+		int last = open[--openCount];
+		open[index] = last;
+		openIndex[last] = index;
+		openIndex[position] = -1;
+
+		int group = groups[position];
+		int[] bucket = groupOpen[group];
+		index = groupIndex[position];
+		last = bucket[--groupOpenCount[group]];
+		bucket[index] = last;
+		groupIndex[last] = index;
+		if (groupOpenCount[group] == 1) {
+			index = movableIndex[group];
+			last = movable[--movableCount];
+			movable[index] = last;
+			movableIndex[last] = index;
+			movableIndex[group] = -1;
+		}
+	}
+
+	/**
+	 * Returns the number of open tiles in a match group
+	 *
+	 * @param group
+	 * @return
+	 */
+	public int getOpenCount(int group) {
+		return groupOpenCount[group];
+	}
+
+	/**
+	 * Returns one of the open tiles in a match group
+	 *
+	 * @param group
+	 * @param index from 0 to getOpenCount(group) - 1
+	 * @return the position of the tile
+	 */
+	public int getOpen(int group, int index) {
+		return groupOpen[group][index];
+	}
+
+	public int getMatchGroupAt(int position) {
+		return groups[position];
+	}
+
+	/**
+	 * Brings a position's membership of the open list in line with its
+	 * blocking counts
+	 *
+	 * @param position
+	 */
+	private void updateOpen(int position) {
+		boolean isListed = openIndex[position] >= 0;
+		boolean isOpen = occupied[position] && isOpen(position);
+		if (isOpen && !isListed) {
+			addOpen(position);
+		} else if (!isOpen && isListed) {
+			removeOpen(position);
+		}
+	}
+
+	/**
+	 * Takes a tile off of the board, updating only the positions it was
+	 * blocking
+	 *
+	 * @param position
+	 */
+	private void take(int position) {
+		occupied[position] = false;
+		if (bitboard != null) {
+			bitboard.clear(board, position);
+		}
+		remaining--;
+		groupRemaining[groups[position]]--;
+		hash ^= keys[position * TileFace.GROUP_COUNT + groups[position]];
+		if (openIndex[position] >= 0) {
+			removeOpen(position);
+		}
+		adjust(position, -1);
+	}
+
+	/**
+	 * Puts a tile back onto the board, updating only the positions it blocks
+	 *
+	 * @param position
+	 */
+	private void place(int position) {
+		occupied[position] = true;
+		if (bitboard != null) {
+			bitboard.set(board, position);
+		}
+		remaining++;
+		groupRemaining[groups[position]]++;
+		hash ^= keys[position * TileFace.GROUP_COUNT + groups[position]];
+		adjust(position, 1);
+		updateOpen(position);
+	}
+
+	private void adjust(int position, int change) {
+		for (int blocked : layout.getBelow(position)) {
+			aboveCount[blocked] += change;
+			updateOpen(blocked);
+		}
+		for (int blocked : layout.getRightNeighbours(position)) {
+			leftCount[blocked] += change;
+			updateOpen(blocked);
+		}
+		for (int blocked : layout.getLeftNeighbours(position)) {
+			rightCount[blocked] += change;
+			updateOpen(blocked);
+		}
+	}
+
+	/**
+	 * Removes the tile at a position, recording it in the undo history
+	 *
+	 * @param position
+	 * @return false if there was no tile there
+	 */
+	public boolean remove(int position) {
+		if (!isOccupied(position)) {
+			return false;
+		}
+		take(position);
+		removed[removedCount++] = position;
+		return true;
+	}
+
+	/**
+	 * Removes a pair of tiles as a move, without checking that they are open
+	 * or match and without touching the redo history. Searches pair this with
+	 * takeBack
+	 *
+	 * @param position1
+	 * @param position2
+	 */
+	public void play(int position1, int position2) {
+		take(position1);
+		removed[removedCount++] = position1;
+		take(position2);
+		removed[removedCount++] = position2;
+	}
+
+	/**
+	 * Puts the last two removed tiles back without remembering them for a
+	 * redo
+	 */
+	public void takeBack() {
+		place(removed[--removedCount]);
+		place(removed[--removedCount]);
+	}
+
+	/**
+	 * Puts the last two removed tiles back
+	 *
+	 * @return false if there was no pair to put back
+	 */
+	public boolean undo() {
+		if (removedCount < 2) {
+			return false;
+		}
+		for (int i = 0; i < 2; i++) {
+			int position = removed[--removedCount];
+			place(position);
+			restored[restoredCount++] = position;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the last pair that was put back by an undo
+	 *
+	 * @return false if there was nothing to redo
+	 */
+	public boolean redo() {
+		if (restoredCount < 2) {
+			return false;
+		}
+		for (int i = 0; i < 2; i++) {
+			int position = restored[--restoredCount];
+			take(position);
+			removed[removedCount++] = position;
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets the undone moves, as happens when a new move is made
+	 */
+	public void clearRedo() {
+		restoredCount = 0;
+	}
+
+	public boolean canUndo() {
+		return removedCount >= 2;
+	}
+
+	public boolean canRedo() {
+		return restoredCount >= 2;
+	}
+
+	/**
+	 * Returns true if there is at least one pair of open, matching tiles
+	 *
+	 * @return
+	 */
+	public boolean hasMove() {
+		return movableCount > 0;
+	}
+
+	/**
+	 * Looks for a pair of open, matching tiles
+	 *
+	 * @return a two element array with the positions, or null if there are
+	 * no moves left
+	 */
+	public int[] findMove() {
+		if (movableCount == 0) {
+			return null;
+		}
+		int[] bucket = groupOpen[movable[0]];
+		return new int[]{bucket[0], bucket[1]};
+	}
+
+	/**
+	 * Lists every pair of open, matching tiles
+	 *
+	 * @param moves filled with the pairs of positions one after the other,
+	 * needs room for twice MAX_MOVES
+	 * @return the number of pairs
+	 */
+	public int getMoves(int[] moves) {
+		int count = 0;
+		for (int i = 0; i < movableCount; i++) {
+			int group = movable[i];
+			int[] bucket = groupOpen[group];
+			int size = groupOpenCount[group];
+			for (int j = 0; j < size; j++) {
+				for (int k = j + 1; k < size; k++) {
+					moves[count * 2] = bucket[j];
+					moves[count * 2 + 1] = bucket[k];
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+}
@@ -0,0 +1,198 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Estimates how likely each move is to win by playing the position out over
+ * and over after it, on every core, for as long as it's given. It answers for
+ * positions the solver can't finish in time, and always returns by the
+ * deadline with however many playouts it got through.
+ *
+ * Every thread works on its own copy of the engine and takes each move in
+ * turn, a heuristic playout after it and the move back again, so nothing is
+ * allocated once the playouts start. Each thread keeps its own counts, which
+ * are added up at the end
+ */
+public class MonteCarloEvaluator {
+
+	/**
+	 * The default time to spend, in milliseconds
+	 */
+	public static final long DEFAULT_BUDGET_MILLIS = 250;
+
+	private final ExecutorService executor;
+	private final int threads;
+	private volatile boolean cancelled = false;
+
+	public MonteCarloEvaluator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates an evaluator with its own threads
+	 *
+	 * @param threads
+	 */
+	public MonteCarloEvaluator(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread, not " + threads);
+		}
+		this.threads = threads;
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Monte Carlo evaluator");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Plays out every move from the engine's current position until the time
+	 * is up. The engine itself isn't changed
+	 *
+	 * @param position
+	 * @param budgetMillis
+	 * @return the counts for each move, with none if there are no moves
+	 */
+	public WinEstimate evaluate(MahjongEngine position, long budgetMillis) {
+		long start = System.nanoTime();
+		final long deadline = start + budgetMillis * 1000000L;
+		cancelled = false;
+		int[] all = new int[MahjongEngine.MAX_MOVES * 2];
+		final int count = position.getMoves(all);
+		final int[] moves = new int[count * 2];
+		System.arraycopy(all, 0, moves, 0, moves.length);
+		long[] wins = new long[count];
+		long[] playouts = new long[count];
+		if (count == 0) {
+			return new WinEstimate(moves, wins, playouts, 0);
+		}
+
+		List<Future<long[]>> results = new ArrayList<>();
+		for (int i = 0; i < threads; i++) {
+			final MahjongEngine engine = new MahjongEngine(position);
+			final int first = i % count;
+			results.add(executor.submit(new Callable<long[]>() {
+				@Override
+				public long[] call() {
+					return playOut(engine, moves, count, first, deadline);
+				}
+			}));
+		}
+		for (Future<long[]> result : results) {
+			try {
+				long[] counts = result.get();
+				for (int move = 0; move < count; move++) {
+					wins[move] += counts[move * 2];
+					playouts[move] += counts[move * 2 + 1];
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			} catch (ExecutionException e) {
+				System.err.println("A playout thread failed: " + e.getCause());
+			}
+		}
+		return new WinEstimate(moves, wins, playouts, System.nanoTime() - start);
+	}
+
+	/**
+	 * Plays out the moves in turn on one thread until the deadline
+	 *
+	 * @param engine this thread's copy
+	 * @param moves
+	 * @param count
+	 * @param first the move to start with, so threads don't all start alike
+	 * @param deadline
+	 * @return the wins and playouts for each move, one after the other
+	 */
+	private long[] playOut(MahjongEngine engine, int[] moves, int count, int first,
+			long deadline) {
+		long[] counts = new long[count * 2];
+		int[] scratch = new int[MahjongEngine.MAX_MOVES * 2];
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int move = first;
+		while (!cancelled && System.nanoTime() < deadline) {
+			engine.play(moves[move * 2], moves[move * 2 + 1]);
+			if (Playout.heuristic(engine, random, scratch)) {
+				counts[move * 2]++;
+			}
+			counts[move * 2 + 1]++;
+			engine.takeBack();
+			if (++move == count) {
+				move = 0;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Stops an evaluation running on another thread, which then returns the
+	 * counts it has
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Stops the threads for good
+	 */
+	public void shutdown() {
+		cancel();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Estimates the opening moves of some games with one thread and with all
+	 * of them, and prints the playout rates and the best move's win rate.
+	 * Arguments are optional: -t and a budget in milliseconds, and game numbers
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		long budget = DEFAULT_BUDGET_MILLIS;
+		List<Long> games = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-t") && i + 1 < args.length) {
+				budget = Long.parseLong(args[++i]);
+			} else {
+				games.add(Long.parseLong(args[i]));
+			}
+		}
+		if (games.isEmpty()) {
+			for (long game = 0; game < 10; game++) {
+				games.add(game);
+			}
+		}
+
+		MonteCarloEvaluator single = new MonteCarloEvaluator(1);
+		MonteCarloEvaluator parallel = new MonteCarloEvaluator();
+		System.out.println("Threads: " + parallel.getThreads());
+		for (long game : games) {
+			MahjongEngine engine = new MahjongEngine();
+			engine.deal(game);
+			WinEstimate one = single.evaluate(engine, budget);
+			WinEstimate all = parallel.evaluate(engine, budget);
+			int best = all.getBest();
+			System.out.println(String.format("Game %06d: %d moves; single %d playouts/s;"
+					+ " parallel %d playouts/s; best move wins %.0f%% of %d playouts",
+					game, all.getCount(), one.getPlayoutsPerSecond(),
+					all.getPlayoutsPerSecond(), all.getWinRate(best) * 100,
+					all.getPlayouts(best)));
+		}
+		single.shutdown();
+		parallel.shutdown();
+	}
+}
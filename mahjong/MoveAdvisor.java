@@ -0,0 +1,184 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Picks the best move it can find in a limited time. The whole position is
+ * solved first, and if it can be won the first move of the winning line is
+ * the answer. Otherwise each move is tried in turn, best looking first, with
+ * whatever time is left, and if nothing is proven the best looking move that
+ * isn't known to lose is chosen.
+ *
+ * A move looks good when it can't hurt, because every tile left in its group
+ * is open, when it frees other tiles, and when its tiles sit on tall stacks
+ */
+public class MoveAdvisor {
+
+	/**
+	 * The default time to spend on a move, in milliseconds
+	 */
+	public static final long DEFAULT_BUDGET_MILLIS = 50;
+
+	// A move in a group with all of its tiles open is never a mistake
+	private static final int SAFE_SCORE = 1000;
+
+	// Each candidate move gets at least this long to be solved
+	private static final long MIN_MOVE_MILLIS = 5;
+
+	private final Solver solver = new Solver();
+
+	/**
+	 * Finds the best move from the engine's current position. The engine
+	 * itself isn't changed
+	 *
+	 * @param position
+	 * @param budgetMillis roughly how long to spend
+	 * @return the two positions to remove, or null if there are no moves
+	 */
+	public int[] findBestMove(MahjongEngine position, long budgetMillis) {
+		return findBestMove(position, budgetMillis, null);
+	}
+
+	/**
+	 * Finds the best move from the engine's current position, settling for
+	 * the best move it has once the cancel flag is set, even if that was
+	 * before the search started. The engine itself isn't changed
+	 *
+	 * @param position
+	 * @param budgetMillis roughly how long to spend
+	 * @param cancel can be null
+	 * @return the two positions to remove, or null if there are no moves
+	 */
+	public synchronized int[] findBestMove(MahjongEngine position, long budgetMillis,
+			AtomicBoolean cancel) {
+		long deadline = System.nanoTime() + budgetMillis * 1000000L;
+		MahjongEngine engine = new MahjongEngine(position);
+		int[] moves = new int[MahjongEngine.MAX_MOVES * 2];
+		int count = engine.getMoves(moves);
+		if (count == 0) {
+			return null;
+		}
+
+		int[] scores = new int[count];
+		for (int i = 0; i < count; i++) {
+			scores[i] = score(engine, moves[i * 2], moves[i * 2 + 1]);
+		}
+		sort(moves, scores, count);
+		if (count == 1 || scores[0] >= SAFE_SCORE) {
+			return new int[]{moves[0], moves[1]};
+		}
+
+		SolverResult result = solver.solve(engine, budgetMillis / 2, cancel);
+		if (result.isWinnable()) {
+			int[] line = result.getMoves();
+			return new int[]{line[0], line[1]};
+		}
+		if (result.isUnwinnable()) {
+			// Nothing will win, so go for the move that keeps the most going
+			return new int[]{moves[0], moves[1]};
+		}
+
+		int best = -1;
+		for (int i = 0; i < count; i++) {
+			long left = (deadline - System.nanoTime()) / 1000000;
+			if ((cancel != null && cancel.get()) || left < MIN_MOVE_MILLIS) {
+				break;
+			}
+			engine.play(moves[i * 2], moves[i * 2 + 1]);
+			result = solver.solve(engine, Math.max(MIN_MOVE_MILLIS, left / (count - i)), cancel);
+			engine.takeBack();
+			if (result.isWinnable()) {
+				return new int[]{moves[i * 2], moves[i * 2 + 1]};
+			}
+			if (!result.isUnwinnable() && best < 0) {
+				best = i;
+			}
+		}
+		if (best < 0) {
+			best = 0;
+		}
+		return new int[]{moves[best * 2], moves[best * 2 + 1]};
+	}
+
+	/**
+	 * Sets the endgame table the solver looks small positions up in. Call
+	 * this before searching
+	 *
+	 * @param endgames can be null
+	 */
+	public synchronized void setEndgameTable(EndgameTable endgames) {
+		solver.setEndgameTable(endgames);
+	}
+
+	/**
+	 * Sets the cache the solver looks positions up in and stores its results
+	 * in. Call this before searching
+	 *
+	 * @param cache can be null
+	 */
+	public synchronized void setResultCache(SolverCache cache) {
+		solver.setResultCache(cache);
+	}
+
+	/**
+	 * Rates a move on how much it opens up and how safe it is
+	 *
+	 * @param engine
+	 * @param first
+	 * @param second
+	 * @return
+	 */
+	public static int score(MahjongEngine engine, int first, int second) {
+		int group = engine.getMatchGroupAt(first);
+		if (engine.getOpenCount(group) == engine.getRemainingCount(group)) {
+			return SAFE_SCORE;
+		}
+
+		int openBefore = engine.getOpenCount() - 2;
+		engine.play(first, second);
+		int freed = engine.getOpenCount() - openBefore;
+		engine.takeBack();
+
+		return freed * 4 + (depth(engine, first) + depth(engine, second)) * 2;
+	}
+
+	/**
+	 * Returns how many tiles high the stack under a position is
+	 *
+	 * @param engine
+	 * @param position
+	 * @return
+	 */
+	private static int depth(MahjongEngine engine, int position) {
+		int depth = 0;
+		for (int below : engine.getLayout().getBelow(position)) {
+			if (engine.isOccupied(below)) {
+				depth = Math.max(depth, 1 + depth(engine, below));
+			}
+		}
+		return depth;
+	}
+
+	/**
+	 * Sorts the moves by score, highest first
+	 *
+	 * @param moves
+	 * @param scores
+	 * @param count
+	 */
+	private static void sort(int[] moves, int[] scores, int count) {
+		for (int i = 1; i < count; i++) {
+			int score = scores[i];
+			int first = moves[i * 2];
+			int second = moves[i * 2 + 1];
+			int j = i - 1;
+			while (j >= 0 && scores[j] < score) {
+				scores[j + 1] = scores[j];
+				moves[(j + 1) * 2] = moves[j * 2];
+				moves[(j + 1) * 2 + 1] = moves[j * 2 + 1];
+				j--;
+			}
+			scores[j + 1] = score;
+			moves[(j + 1) * 2] = first;
+			moves[(j + 1) * 2 + 1] = second;
+		}
+	}
+}
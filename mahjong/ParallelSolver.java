@@ -0,0 +1,279 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Solves a position on several threads at once. The first few moves are
+ * split into fork/join tasks, one per move, and below that each task runs an
+ * ordinary Solver. All of them share one lock striped transposition table, so
+ * a position one thread has lost is never searched by another, and the first
+ * task to find a win stops all of the rest.
+ *
+ * A task that happens to start on a huge lost subtree would hold its thread
+ * for the whole time limit, so the tasks are given short time slices, and
+ * whenever a round ends without an answer the tree is split again with twice
+ * the time. Lost subtrees are in the table by then and cost nothing the next
+ * time around
+ */
+public class ParallelSolver {
+
+	/**
+	 * How many moves deep the search is split into separate tasks
+	 */
+	public static final int DEFAULT_SPLIT_DEPTH = 2;
+
+	/**
+	 * The default table size, as a power of two. 2^22 entries take 32MB
+	 */
+	public static final int DEFAULT_TABLE_BITS = 22;
+
+	// How many locks the table is split between
+	private static final int STRIPES = 256;
+
+	// How long each task gets in the first round
+	private static final long FIRST_SLICE_MILLIS = 20;
+
+	private final ForkJoinPool pool;
+	private final int splitDepth;
+	private final TranspositionTable table;
+	private final AtomicBoolean stop = new AtomicBoolean();
+	private final AtomicLong nodes = new AtomicLong();
+	private final AtomicReference<int[]> winningLine = new AtomicReference<>();
+
+	// Each worker thread keeps a solver, so its buffers are only made once
+	private final ThreadLocal<Solver> solvers;
+
+	private long deadline;
+	private long sliceNanos;
+
+	public ParallelSolver() {
+		this(ForkJoinPool.commonPool(), DEFAULT_SPLIT_DEPTH, DEFAULT_TABLE_BITS);
+	}
+
+	/**
+	 * Creates a solver that runs its tasks on the given pool
+	 *
+	 * @param pool
+	 * @param splitDepth how many moves deep to split into tasks
+	 * @param tableBits the transposition table size, as a power of two
+	 */
+	public ParallelSolver(ForkJoinPool pool, int splitDepth, int tableBits) {
+		if (splitDepth < 1) {
+			throw new IllegalArgumentException("The split depth must be at least 1, not " + splitDepth);
+		}
+		this.pool = pool;
+		this.splitDepth = splitDepth;
+		table = new TranspositionTable(tableBits, STRIPES);
+		solvers = new ThreadLocal<Solver>() {
+			@Override
+			protected Solver initialValue() {
+				return new Solver(table, stop);
+			}
+		};
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Forgets every position in the transposition table
+	 */
+	public void clear() {
+		table.clear();
+	}
+
+	/**
+	 * Stops a solve that is running on another thread, which then reports
+	 * that it timed out
+	 */
+	public void cancel() {
+		stop.set(true);
+	}
+
+	/**
+	 * Searches for a way to clear the board from the engine's current
+	 * position, on the pool's threads. The engine itself isn't changed
+	 *
+	 * @param position
+	 * @param timeLimitMillis how long to search before giving up
+	 * @return
+	 */
+	public synchronized SolverResult solve(MahjongEngine position, long timeLimitMillis) {
+		long start = System.nanoTime();
+		deadline = start + timeLimitMillis * 1000000L;
+		stop.set(false);
+		nodes.set(0);
+		winningLine.set(null);
+
+		SolverResult.Outcome outcome = SolverResult.Outcome.TIMED_OUT;
+		sliceNanos = FIRST_SLICE_MILLIS * 1000000L;
+		while (!stop.get() && System.nanoTime() < deadline) {
+			outcome = pool.invoke(new SplitTask(new MahjongEngine(position),
+					position.getRemovedCount(), 0));
+			if (outcome != SolverResult.Outcome.TIMED_OUT) {
+				break;
+			}
+			sliceNanos *= 2;
+		}
+		long elapsed = System.nanoTime() - start;
+
+		if (outcome == SolverResult.Outcome.WINNABLE) {
+			return new SolverResult(outcome, winningLine.get(), nodes.get(), elapsed);
+		}
+		return new SolverResult(outcome, new int[0], nodes.get(), elapsed);
+	}
+
+	/**
+	 * Tries every move from one position, as a task of its own for each move
+	 * down to the split depth and with a plain Solver below that
+	 */
+	private class SplitTask extends RecursiveTask<SolverResult.Outcome> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final MahjongEngine engine;
+		private final int startCount;
+		private final int depth;
+
+		/**
+		 * @param engine the position, owned by this task
+		 * @param startCount how many moves the engine had made before solving
+		 * began, which are not part of the winning line
+		 * @param depth
+		 */
+		private SplitTask(MahjongEngine engine, int startCount, int depth) {
+			this.engine = engine;
+			this.startCount = startCount;
+			this.depth = depth;
+		}
+
+		@Override
+		protected SolverResult.Outcome compute() {
+			if (stop.get()) {
+				return SolverResult.Outcome.TIMED_OUT;
+			}
+			if (engine.getRemainingCount() == 0) {
+				won(new int[0]);
+				return SolverResult.Outcome.WINNABLE;
+			}
+			if (depth >= splitDepth) {
+				return solveHere();
+			}
+
+			long hash = engine.getHash();
+			if (table.contains(hash)) {
+				return SolverResult.Outcome.UNWINNABLE;
+			}
+
+			int[] buffer = new int[MahjongEngine.MAX_MOVES * 2];
+			int count = engine.getMoves(buffer);
+			List<SplitTask> tasks = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				MahjongEngine child = new MahjongEngine(engine);
+				child.play(buffer[i * 2], buffer[i * 2 + 1]);
+				tasks.add(new SplitTask(child, startCount, depth + 1));
+			}
+			invokeAll(tasks);
+
+			boolean timedOut = false;
+			for (SplitTask task : tasks) {
+				SolverResult.Outcome outcome = task.join();
+				if (outcome == SolverResult.Outcome.WINNABLE) {
+					return outcome;
+				}
+				timedOut |= outcome == SolverResult.Outcome.TIMED_OUT;
+			}
+			if (timedOut) {
+				return SolverResult.Outcome.TIMED_OUT;
+			}
+			table.add(hash);
+			return SolverResult.Outcome.UNWINNABLE;
+		}
+
+		/**
+		 * Runs a sequential search from this task's position for one time
+		 * slice
+		 *
+		 * @return
+		 */
+		private SolverResult.Outcome solveHere() {
+			long left = Math.min(sliceNanos, deadline - System.nanoTime());
+			if (left <= 0) {
+				return SolverResult.Outcome.TIMED_OUT;
+			}
+			SolverResult result = solvers.get().solve(engine, Math.max(1, left / 1000000));
+			nodes.addAndGet(result.getNodes());
+			if (result.isWinnable()) {
+				won(result.getMoves());
+			}
+			return result.getOutcome();
+		}
+
+		/**
+		 * Records the moves that led to this task followed by the given ones
+		 * as the winning line, if no other task got there first, and stops
+		 * every other task
+		 *
+		 * @param moves
+		 */
+		private void won(int[] moves) {
+			int made = engine.getRemovedCount() - startCount;
+			int[] line = new int[made + moves.length];
+			for (int i = 0; i < made; i++) {
+				line[i] = engine.getRemoved(startCount + i);
+			}
+			System.arraycopy(moves, 0, line, made, moves.length);
+			winningLine.compareAndSet(null, line);
+			stop.set(true);
+		}
+	}
+
+	/**
+	 * Solves the given game numbers with one thread and then with the whole
+	 * common pool, and prints the speed of each and the speedup
+	 *
+	 * @param args game numbers, optionally after a time limit in
+	 * milliseconds given as -t followed by the number
+	 */
+	public static void main(String[] args) {
+		long timeLimit = 10000;
+		List<Long> games = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-t") && i + 1 < args.length) {
+				timeLimit = Long.parseLong(args[++i]);
+			} else {
+				games.add(Long.parseLong(args[i]));
+			}
+		}
+		if (games.isEmpty()) {
+			for (long game = 0; game < 10; game++) {
+				games.add(game);
+			}
+		}
+
+		Solver solver = new Solver(DEFAULT_TABLE_BITS);
+		ParallelSolver parallelSolver = new ParallelSolver();
+		System.out.println("Threads: " + parallelSolver.getParallelism());
+		for (long game : games) {
+			MahjongEngine engine = new MahjongEngine();
+			engine.deal(game);
+
+			solver.clear();
+			SolverResult single = solver.solve(engine, timeLimit);
+			parallelSolver.clear();
+			SolverResult parallel = parallelSolver.solve(engine, timeLimit);
+
+			double speedup = parallel.getElapsedNanos() == 0 ? 0
+					: (double) single.getElapsedNanos() / parallel.getElapsedNanos();
+			System.out.println(String.format("Game %06d: single %s, %d nodes/s;"
+					+ " parallel %s, %d nodes/s; speedup %.2f", game, single,
+					single.getNodesPerSecond(), parallel,
+					parallel.getNodesPerSecond(), speedup));
+		}
+	}
+}
@@ -1,54 +1,61 @@
 
 
-
 import java.awt.Graphics;
 import java.awt.Image;
-
-import javax.swing.ImageIcon;
+import java.util.ArrayList;
+import java.util.List;
 
 abstract public class PictureTile extends Tile{
 	private static final long serialVersionUID = 221638277442731505L;
-	
-	private String name;
-    
+
+	// How big the pictures are drawn next to their files
+	protected static final double SCALE = .8;
+
     public PictureTile(String name) {
-        this.name = name;
-		
-		setToolTipText(toString());
+        super(pictureFace(name));
     }
+
+	private static TileFace pictureFace(String name) {
+		TileFace face = TileFace.picture(name);
+		if (face == null) {
+			throw new IllegalArgumentException("Invalid name to initialize " +
+					"picture tile (" + name + ")");
+		}
+		return face;
+	}
+
+	/**
+	 * Returns the image file names of every picture face
+	 *
+	 * @return
+	 */
+	protected static String[] getImageNames() {
+		List<String> names = new ArrayList<>();
+		for (int id = 0; id < TileFace.COUNT; id++) {
+			String name = TileFace.get(id).getImageName();
+			if (name != null) {
+				names.add(name + ".png");
+			}
+		}
+		return names.toArray(new String[names.size()]);
+	}
+
+	/**
+	 * Starts loading the pictures in the background
+	 */
+	protected static void preload() {
+		ImageCache.getInstance().warm(getImageNames(), SCALE);
+	}
  
 	@Override
-	protected void paintComponent(Graphics g) {
-		super.paintComponent(g);
-		
-		ImageIcon image = new ImageIcon(getClass().getResource("images/" + name + ".png"));
-		image = new ImageIcon(
-				image.getImage().getScaledInstance(
-						(int) (image.getIconWidth() * .8), 
-						(int) (image.getIconHeight() * .8), 
-						Image.SCALE_DEFAULT));
-		
-		int x = (WIDTH - image.getIconWidth()) / 2 + 10;
-		int y = (HEIGHT - image.getIconHeight()) / 2;
-		g.drawImage(image.getImage(), x, y, this);
+	protected void paintFace(Graphics g) {
+		Image image = ImageCache.getInstance().get(face.getImageName() + ".png", SCALE);
+		if (image == null) {
+			return;
+		}
+
+		int x = (WIDTH - image.getWidth(null)) / 2 + 10;
+		int y = (HEIGHT - image.getHeight(null)) / 2;
+		g.drawImage(image, x, y, this);
 	}
-	
-	@Override
-    public String toString() {
-        String[] validNames = {"Chrysanthemum", "Orchid", "Plum", "Bamboo", "Spring",
-            "Summer", "Fall", "Winter"};
-    
-        int index = -1;
-        for (int i = 0; i < validNames.length; i++) {
-            if (validNames[i].equals(name)) {
-                index = i;
-                break;
-            }
-        }
-        
-        if (index < 0) {
-            return "Invalid Picture Tile";
-        }
-        return name;
-    }
 }
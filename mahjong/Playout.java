@@ -0,0 +1,84 @@
+import java.util.Random;
+
+/**
+ * Plays a position out to the end with random or heuristic moves, on the
+ * engine itself, and puts it back the way it was. Nothing is allocated, so
+ * playouts can be run by the thousand
+ */
+public class Playout {
+
+	// What a freed tile is worth to a heuristic move, and the most random
+	// noise added to vary the playouts
+	private static final int FREED_WEIGHT = 8;
+	private static final int NOISE = 16;
+
+	private Playout() {
+	}
+
+	/**
+	 * Plays random moves until there are none left, then takes them all back
+	 *
+	 * @param engine
+	 * @param random
+	 * @param moves scratch space for twice MahjongEngine.MAX_MOVES ints
+	 * @return whether the board was cleared
+	 */
+	public static boolean random(MahjongEngine engine, Random random, int[] moves) {
+		int start = engine.getRemovedCount();
+		int count;
+		while ((count = engine.getMoves(moves)) > 0) {
+			int move = random.nextInt(count);
+			engine.play(moves[move * 2], moves[move * 2 + 1]);
+		}
+		boolean won = engine.getRemainingCount() == 0;
+		while (engine.getRemovedCount() > start) {
+			engine.takeBack();
+		}
+		return won;
+	}
+
+	/**
+	 * Plays heuristic moves until there are none left, then takes them all
+	 * back. A move that clears a group whose tiles are all open is always
+	 * made first, and otherwise moves that free more tiles are preferred,
+	 * with enough noise that playouts differ. This wins about twice as often
+	 * as random play, at about a quarter of the speed
+	 *
+	 * @param engine
+	 * @param random
+	 * @param moves scratch space for twice MahjongEngine.MAX_MOVES ints
+	 * @return whether the board was cleared
+	 */
+	public static boolean heuristic(MahjongEngine engine, Random random, int[] moves) {
+		int start = engine.getRemovedCount();
+		int count;
+		while ((count = engine.getMoves(moves)) > 0) {
+			int best = 0;
+			int bestScore = -1;
+			for (int i = 0; i < count; i++) {
+				int first = moves[i * 2];
+				int second = moves[i * 2 + 1];
+				int group = engine.getMatchGroupAt(first);
+				if (engine.getOpenCount(group) == engine.getRemainingCount(group)) {
+					best = i;
+					break;
+				}
+				int openBefore = engine.getOpenCount() - 2;
+				engine.play(first, second);
+				int score = (engine.getOpenCount() - openBefore) * FREED_WEIGHT
+						+ random.nextInt(NOISE);
+				engine.takeBack();
+				if (score > bestScore) {
+					best = i;
+					bestScore = score;
+				}
+			}
+			engine.play(moves[best * 2], moves[best * 2 + 1]);
+		}
+		boolean won = engine.getRemainingCount() == 0;
+		while (engine.getRemovedCount() > start) {
+			engine.takeBack();
+		}
+		return won;
+	}
+}
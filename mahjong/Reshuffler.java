@@ -0,0 +1,67 @@
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Rescues a stuck game by shuffling the tiles left on the board until the
+ * solver proves the new arrangement can be won. Each candidate only gets a
+ * few milliseconds, since an arrangement that is hard to prove is no worse
+ * to skip than one that is lost, and there are plenty more to try
+ */
+public class Reshuffler {
+
+	/**
+	 * The default time to spend on the whole reshuffle, in milliseconds
+	 */
+	public static final long DEFAULT_TIME_LIMIT = 1000;
+
+	// The time each candidate gets before the next is tried
+	private static final long CANDIDATE_MILLIS = 20;
+
+	// Lost arrangements seen again in a row before there's no point going on,
+	// as with two tiles left stacked on each other
+	private static final int MAX_REPEATS = 16;
+
+	private final Solver solver = new Solver();
+
+	/**
+	 * Shuffles the remaining tiles in the engine until they can be won, or
+	 * time runs out. The history is cleared either way
+	 *
+	 * @param engine
+	 * @param random
+	 * @param timeLimitMillis
+	 * @return the check of the arrangement the engine is left with, winnable
+	 * unless time ran out first
+	 */
+	public SolverResult reshuffle(MahjongEngine engine, Random random, long timeLimitMillis) {
+		long deadline = System.nanoTime() + timeLimitMillis * 1000000L;
+		MahjongEngine candidate = new MahjongEngine(engine);
+		SolverResult result;
+		SolverResult fallback = null;
+		Set<Long> lost = new HashSet<Long>();
+		int repeats = 0;
+		do {
+			candidate.shuffleRemaining(random);
+			result = solver.solve(candidate, CANDIDATE_MILLIS);
+			if (result.isWinnable()) {
+				engine.copyFrom(candidate);
+				return result;
+			}
+			if (result.isUnwinnable()) {
+				repeats = lost.add(candidate.getHash()) ? 0 : repeats + 1;
+			}
+			// Failing a winnable one, settle for the first that wasn't lost
+			if (fallback == null && !result.isUnwinnable()) {
+				engine.copyFrom(candidate);
+				fallback = result;
+			}
+		} while (repeats < MAX_REPEATS && System.nanoTime() < deadline);
+
+		if (fallback == null) {
+			engine.copyFrom(candidate);
+			return result;
+		}
+		return fallback;
+	}
+}
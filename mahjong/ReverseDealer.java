@@ -0,0 +1,172 @@
+import java.util.Random;
+
+/**
+ * Deals games that are winnable by construction, with no solver involved. The
+ * board is taken apart from the full layout a random pair of open positions
+ * at a time, and the tiles are then dealt so each of those pairs matches.
+ * Playing the pairs in the order they came off clears the board, so every
+ * deal has at least that one winning line.
+ *
+ * Taking the board apart can get stuck, with tiles left but fewer than two of
+ * them open, in which case it starts over. Everything comes from the random
+ * it's given, so the same game number always builds the same deal
+ */
+public class ReverseDealer {
+
+	private final MahjongEngine scratch;
+	private final int[] deck;
+	private final int[] pairs;
+	private final int[] pending;
+	private int attempts;
+
+	public ReverseDealer() {
+		this(Layout.TURTLE);
+	}
+
+	public ReverseDealer(Layout layout) {
+		scratch = new MahjongEngine(layout);
+		deck = TileFace.newDeck();
+		if (deck.length != layout.size()) {
+			throw new IllegalArgumentException("The deck has " + deck.length +
+					" tiles but the layout has " + layout.size() + " positions");
+		}
+		pairs = new int[deck.length];
+		pending = new int[TileFace.GROUP_COUNT];
+	}
+
+	/**
+	 * Builds a winnable deal
+	 *
+	 * @param random the game's random
+	 * @return a face for every position, ready for MahjongEngine.deal
+	 */
+	public int[] deal(Random random) {
+		int[] faces = new int[deck.length];
+		deal(random, faces);
+		return faces;
+	}
+
+	/**
+	 * Builds a winnable deal into the given array, without allocating
+	 *
+	 * @param random the game's random
+	 * @param faces filled with a face for every position
+	 */
+	public void deal(Random random, int[] faces) {
+		// Pick the order the board comes apart in
+		attempts = 0;
+		do {
+			attempts++;
+			scratch.deal(deck);
+			while (scratch.getOpenCount() >= 2) {
+				int first = random.nextInt(scratch.getOpenCount());
+				int second = random.nextInt(scratch.getOpenCount() - 1);
+				if (second >= first) {
+					second++;
+				}
+				scratch.play(scratch.getOpen(first), scratch.getOpen(second));
+			}
+		} while (scratch.getRemainingCount() > 0);
+
+		// Shuffle the deck and pair it up, each face with the next one to turn
+		// up in its match group
+		System.arraycopy(TileFace.newDeck(), 0, pairs, 0, pairs.length);
+		for (int i = pairs.length; i > 1; i--) {
+			int j = random.nextInt(i);
+			int temp = pairs[i - 1];
+			pairs[i - 1] = pairs[j];
+			pairs[j] = temp;
+		}
+		for (int group = 0; group < pending.length; group++) {
+			pending[group] = -1;
+		}
+		int count = 0;
+		for (int face : pairs) {
+			int group = TileFace.getGroup(face);
+			if (pending[group] < 0) {
+				pending[group] = face;
+			} else {
+				faces[scratch.getRemoved(count++)] = pending[group];
+				faces[scratch.getRemoved(count++)] = face;
+				pending[group] = -1;
+			}
+		}
+	}
+
+	/**
+	 * Returns how many times the last deal had to start over taking the board
+	 * apart, plus one
+	 *
+	 * @return
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Returns the winning line the last deal was built from, in the order the
+	 * pairs should be removed
+	 *
+	 * @return
+	 */
+	public int[] getLine() {
+		int[] line = new int[scratch.getRemovedCount()];
+		for (int i = 0; i < line.length; i++) {
+			line[i] = scratch.getRemoved(i);
+		}
+		return line;
+	}
+
+	/**
+	 * Compares how many deals a second the shuffle and this dealer make, and
+	 * checks that each built deal can be won with the line it was built from
+	 *
+	 * @param args [deals]
+	 */
+	public static void main(String[] args) {
+		int deals = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		MahjongEngine engine = new MahjongEngine();
+		ReverseDealer dealer = new ReverseDealer();
+		int[] faces = new int[engine.getLayout().size()];
+
+		// Warm both up first so the timings compare compiled code
+		for (int round = 0; round < 2; round++) {
+			long start = System.nanoTime();
+			for (long game = 0; game < deals; game++) {
+				engine.deal(new Random(game));
+			}
+			long shuffleNanos = System.nanoTime() - start;
+
+			long attempts = 0;
+			start = System.nanoTime();
+			for (long game = 0; game < deals; game++) {
+				dealer.deal(new Random(game), faces);
+				engine.deal(faces);
+				attempts += dealer.getAttempts();
+			}
+			long reverseNanos = System.nanoTime() - start;
+
+			if (round == 1) {
+				System.out.println(String.format("Shuffle: %d deals/s", deals * 1000000000L / shuffleNanos));
+				System.out.println(String.format("Reverse: %d deals/s, %.3f attempts a deal",
+						deals * 1000000000L / reverseNanos, (double) attempts / deals));
+			}
+		}
+
+		int checked = Math.min(deals, 1000);
+		for (long game = 0; game < checked; game++) {
+			dealer.deal(new Random(game), faces);
+			engine.deal(faces);
+			int[] line = dealer.getLine();
+			for (int i = 0; i < line.length; i += 2) {
+				if (!engine.isOpen(line[i]) || !engine.isOpen(line[i + 1])
+						|| !engine.matches(line[i], line[i + 1])) {
+					System.out.println("Game " + game + " can't be won with its own line");
+					return;
+				}
+				engine.play(line[i], line[i + 1]);
+			}
+		}
+		System.out.println("Checked the first " + checked + " deals can be won");
+	}
+}
@@ -0,0 +1,262 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deals and solves every numbered game, on every core, and writes down which
+ * ones can be won and how hard they are. The results go into three memory
+ * mapped files in the output directory: the WinnableSeeds bitset, the
+ * DifficultyTable of ratings, and a stats file with a 16 byte record per game
+ * holding the outcome, the time the solve took in microseconds and the
+ * positions it searched.
+ *
+ * A record's outcome byte stays 0 until that game is done, so a scan that is
+ * stopped part way picks up where it left off when run again. Games that timed
+ * out are only tried again when asked to, with -retry and usually a longer -t
+ */
+public class SeedScanner {
+
+	/**
+	 * The stats file's name
+	 */
+	public static final String STATS_FILE = "stats.bin";
+
+	/**
+	 * The size of one game's stats record
+	 */
+	public static final int RECORD_SIZE = 16;
+
+	// Offsets within a record
+	private static final int OUTCOME_OFFSET = 0;
+	private static final int MICROS_OFFSET = 4;
+	private static final int NODES_OFFSET = 8;
+
+	// Games per unit of work. A multiple of 8, so no two threads ever write
+	// the same byte of the bitset
+	private static final int CHUNK_SIZE = 4096;
+
+	private static final long DEFAULT_TIME_LIMIT = 2000;
+
+	private final MappedByteBuffer bits;
+	private final MappedByteBuffer stats;
+	private final MappedByteBuffer ratings;
+	private final long timeLimitMillis;
+	private final boolean retry;
+
+	private final AtomicInteger nextChunk = new AtomicInteger();
+	private final AtomicInteger scanned = new AtomicInteger();
+	private final AtomicInteger winnable = new AtomicInteger();
+	private final AtomicInteger unwinnable = new AtomicInteger();
+	private final AtomicInteger timedOut = new AtomicInteger();
+	private final AtomicLong nodes = new AtomicLong();
+
+	private int first;
+	private int last;
+
+	/**
+	 * Opens or creates the files in the given directory
+	 *
+	 * @param directory
+	 * @param timeLimitMillis the time limit for each game
+	 * @param retry whether to try the games that timed out before again
+	 * @throws IOException
+	 */
+	public SeedScanner(File directory, long timeLimitMillis, boolean retry) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create " + directory);
+		}
+		bits = map(new File(directory, WinnableSeeds.BITS_FILE), WinnableSeeds.BITS_LENGTH);
+		stats = map(new File(directory, STATS_FILE), (long) WinnableSeeds.SEED_COUNT * RECORD_SIZE);
+		ratings = map(new File(directory, DifficultyTable.RATINGS_FILE), WinnableSeeds.SEED_COUNT);
+		this.timeLimitMillis = timeLimitMillis;
+		this.retry = retry;
+	}
+
+	private static MappedByteBuffer map(File file, long length) throws IOException {
+		try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+			if (output.length() != length) {
+				output.setLength(length);
+			}
+			return output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+		}
+	}
+
+	/**
+	 * Returns how a game went in an earlier scan
+	 *
+	 * @param seed
+	 * @return the outcome, or null if the game hasn't been scanned
+	 */
+	public SolverResult.Outcome getOutcome(int seed) {
+		int code = stats.get(seed * RECORD_SIZE + OUTCOME_OFFSET);
+		return code == 0 ? null : SolverResult.Outcome.values()[code - 1];
+	}
+
+	/**
+	 * Scans the games from first to last, inclusive, on the given number of
+	 * threads, printing progress as it goes
+	 *
+	 * @param first
+	 * @param last
+	 * @param threads
+	 * @throws InterruptedException
+	 */
+	public void scan(int first, int last, int threads) throws InterruptedException {
+		this.first = first;
+		this.last = last;
+		nextChunk.set(0);
+		final long start = System.nanoTime();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					// Solvers can share their table between deals, so each
+					// thread keeps one for the whole scan
+					Solver solver = new Solver();
+					DifficultyRater rater = new DifficultyRater();
+					MahjongEngine engine = new MahjongEngine();
+					while (scanChunk(nextChunk.getAndIncrement(), solver, rater, engine)) {
+						report(start);
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		bits.force();
+		stats.force();
+		ratings.force();
+		report(start);
+	}
+
+	/**
+	 * Scans one chunk of games
+	 *
+	 * @param chunk
+	 * @param solver
+	 * @param rater
+	 * @param engine
+	 * @return false once there are no chunks left
+	 */
+	private boolean scanChunk(int chunk, Solver solver, DifficultyRater rater,
+			MahjongEngine engine) {
+		int chunkStart = first - first % CHUNK_SIZE + chunk * CHUNK_SIZE;
+		if (chunkStart > last) {
+			return false;
+		}
+		int chunkEnd = Math.min(last, chunkStart + CHUNK_SIZE - 1);
+		for (int seed = Math.max(first, chunkStart); seed <= chunkEnd; seed++) {
+			SolverResult.Outcome previous = getOutcome(seed);
+			// Winnable games from before there were ratings get solved again
+			boolean unrated = previous == SolverResult.Outcome.WINNABLE
+					&& ratings.get(seed) == 0;
+			if (previous != null && !unrated
+					&& !(retry && previous == SolverResult.Outcome.TIMED_OUT)) {
+				continue;
+			}
+
+			engine.deal(seed);
+			SolverResult result = solver.solve(engine, timeLimitMillis);
+			// Rated on a fresh table, which the scan's solver doesn't have,
+			// so the rating doesn't depend on which games came before, and
+			// with the game's own limit so it agrees with the one shown
+			if (result.isWinnable()) {
+				DifficultyRating rating = rater.rate(engine, DifficultyRater.DEFAULT_TIME_LIMIT);
+				ratings.put(seed, rating == null ? DifficultyTable.UNRATABLE
+						: (byte) (rating.getScore() + 1));
+			} else {
+				ratings.put(seed, (byte) 0);
+			}
+			record(seed, result);
+		}
+		bits.force();
+		stats.force();
+		ratings.force();
+		return true;
+	}
+
+	private void record(int seed, SolverResult result) {
+		int record = seed * RECORD_SIZE;
+		stats.putInt(record + MICROS_OFFSET,
+				(int) Math.min(Integer.MAX_VALUE, result.getElapsedNanos() / 1000));
+		stats.putLong(record + NODES_OFFSET, result.getNodes());
+		// The outcome goes last, so a record is never marked done before the
+		// rest of it is written
+		stats.put(record + OUTCOME_OFFSET, (byte) (result.getOutcome().ordinal() + 1));
+
+		int index = seed >>> 3;
+		int bit = 1 << (seed & 7);
+		if (result.isWinnable()) {
+			bits.put(index, (byte) (bits.get(index) | bit));
+			winnable.incrementAndGet();
+		} else {
+			bits.put(index, (byte) (bits.get(index) & ~bit));
+			if (result.isUnwinnable()) {
+				unwinnable.incrementAndGet();
+			} else {
+				timedOut.incrementAndGet();
+			}
+		}
+		scanned.incrementAndGet();
+		nodes.addAndGet(result.getNodes());
+	}
+
+	private synchronized void report(long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("%d scanned: %d winnable, %d unwinnable, %d timed out;"
+				+ " %.1f games/s, %d nodes/s", scanned.get(), winnable.get(),
+				unwinnable.get(), timedOut.get(), scanned.get() / seconds,
+				(long) (nodes.get() / seconds)));
+	}
+
+	/**
+	 * Runs a scan. The arguments are all optional: -d and a directory, -t and
+	 * a time limit per game in milliseconds, -threads and a thread count,
+	 * -retry, and the first and last game numbers to scan
+	 *
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		File directory = new File(WinnableSeeds.DEFAULT_DIRECTORY);
+		long timeLimit = DEFAULT_TIME_LIMIT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean retry = false;
+		int first = 0;
+		int last = WinnableSeeds.SEED_COUNT - 1;
+		int numbers = 0;
+
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-d") && i + 1 < args.length) {
+				directory = new File(args[++i]);
+			} else if (args[i].equals("-t") && i + 1 < args.length) {
+				timeLimit = Long.parseLong(args[++i]);
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-retry")) {
+				retry = true;
+			} else if (numbers == 0) {
+				first = Integer.parseInt(args[i]);
+				numbers++;
+			} else {
+				last = Integer.parseInt(args[i]);
+				numbers++;
+			}
+		}
+		if (first < 0 || last >= WinnableSeeds.SEED_COUNT || first > last) {
+			throw new IllegalArgumentException("Game numbers must be from 0 to "
+					+ (WinnableSeeds.SEED_COUNT - 1));
+		}
+
+		new SeedScanner(directory, timeLimit, retry).scan(first, last, threads);
+	}
+}
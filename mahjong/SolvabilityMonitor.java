@@ -0,0 +1,341 @@
+import java.awt.EventQueue;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps checking whether the game can still be won, on a thread of its own.
+ * Each time the position changes the last check is abandoned, since nobody
+ * wants its answer any more, and the new position is checked instead. The
+ * answer goes to the listener on the event dispatch thread.
+ *
+ * Most checks don't need a search at all. Winning lines are remembered by
+ * position, so going back to a position is free. A move that was part of the
+ * last winning line leaves the rest of that line still winning, which is
+ * checked by simply playing it out. Otherwise the solver runs, and its table
+ * of lost positions carries over from one check to the next
+ */
+public class SolvabilityMonitor {
+
+	/**
+	 * Told the outcome of each check that wasn't abandoned
+	 */
+	public interface Listener {
+		/**
+		 * Called on the event dispatch thread
+		 *
+		 * @param hash the checked position's, to tell which one it was
+		 * @param result
+		 */
+		void solvabilityChecked(long hash, SolverResult result);
+	}
+
+	/**
+	 * Told how far back the last winnable position is
+	 */
+	public interface RewindListener {
+		/**
+		 * Called on the event dispatch thread
+		 *
+		 * @param pairs how many pairs to undo to get back to it, or -1 if no
+		 * position in the history could be shown to be winnable
+		 */
+		void lastWinnableFound(int pairs);
+	}
+
+	/**
+	 * The default time a check can take, in milliseconds
+	 */
+	public static final long DEFAULT_TIME_LIMIT = 5000;
+
+	// Winning lines remembered by position hash
+	private static final int KNOWN_LINES = 256;
+
+	private final ExecutorService executor;
+	private final Solver solver = new Solver();
+	private final Listener listener;
+	private final long timeLimitMillis;
+
+	// Only touched on the checking thread
+	private final Map<Long, int[]> knownLines;
+	private int[] lastLine = null;
+
+	// Only touched on the event dispatch thread
+	private Future<?> pending = null;
+	// Set to stop the pending check. Each check has a flag of its own, so
+	// one set before the check even starts still stops it
+	private AtomicBoolean pendingCancel = null;
+	private long checks = 0;
+
+	// The check whose answer is still wanted
+	private volatile long current = 0;
+
+	public SolvabilityMonitor(Listener listener) {
+		this(listener, DEFAULT_TIME_LIMIT);
+	}
+
+	/**
+	 * Creates a monitor with its own checking thread
+	 *
+	 * @param listener
+	 * @param timeLimitMillis how long a check can take before it gives up
+	 */
+	public SolvabilityMonitor(Listener listener, long timeLimitMillis) {
+		this.listener = listener;
+		this.timeLimitMillis = timeLimitMillis;
+		knownLines = new LinkedHashMap<Long, int[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+				return size() > KNOWN_LINES;
+			}
+		};
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Solvability monitor");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Sets the endgame table the solver looks small positions up in. Call
+	 * this on the event dispatch thread before the first check
+	 *
+	 * @param endgames can be null
+	 */
+	public void setEndgameTable(EndgameTable endgames) {
+		solver.setEndgameTable(endgames);
+	}
+
+	/**
+	 * Sets the cache the solver looks positions up in and stores its results
+	 * in. Call this on the event dispatch thread before the first check
+	 *
+	 * @param cache can be null
+	 */
+	public void setResultCache(SolverCache cache) {
+		solver.setResultCache(cache);
+	}
+
+	/**
+	 * Starts checking the engine's current position, abandoning any check
+	 * still going. Call this on the event dispatch thread
+	 *
+	 * @param engine
+	 */
+	public void positionChanged(MahjongEngine engine) {
+		cancelPending();
+		final MahjongEngine position = new MahjongEngine(engine);
+		final long hash = position.getHash();
+		final long check = ++checks;
+		final AtomicBoolean cancel = new AtomicBoolean();
+		current = check;
+		pendingCancel = cancel;
+		pending = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				if (current != check) {
+					return;
+				}
+				final SolverResult result = check(position, cancel);
+				if (current != check) {
+					return;
+				}
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (current == check) {
+							listener.solvabilityChecked(hash, result);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Looks back through the engine's removal history for the latest position
+	 * that can still be won, abandoning any check still going. Call this on
+	 * the event dispatch thread
+	 *
+	 * @param engine
+	 * @param rewindListener
+	 */
+	public void findLastWinnable(MahjongEngine engine, final RewindListener rewindListener) {
+		cancelPending();
+		final MahjongEngine position = new MahjongEngine(engine);
+		final long check = ++checks;
+		final AtomicBoolean cancel = new AtomicBoolean();
+		current = check;
+		pendingCancel = cancel;
+		pending = executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				if (current != check) {
+					return;
+				}
+				final int pairs = lastWinnable(position, check, cancel);
+				if (current != check) {
+					return;
+				}
+				EventQueue.invokeLater(new Runnable() {
+					@Override
+					public void run() {
+						if (current == check) {
+							rewindListener.lastWinnableFound(pairs);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Abandons any check that is still going, and any answer on its way
+	 */
+	public void cancelPending() {
+		current = 0;
+		if (pending != null) {
+			pending.cancel(false);
+			pending = null;
+		}
+		if (pendingCancel != null) {
+			pendingCancel.set(true);
+			pendingCancel = null;
+		}
+	}
+
+	/**
+	 * Stops the checking thread for good
+	 */
+	public void shutdown() {
+		cancelPending();
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Works out whether a position can be won, the cheapest way it can
+	 *
+	 * @param position
+	 * @param cancel stops the solver once it's set
+	 * @return
+	 */
+	private SolverResult check(MahjongEngine position, AtomicBoolean cancel) {
+		long start = System.nanoTime();
+		int[] line = knownLines.get(position.getHash());
+		if (line == null && lastLine != null) {
+			line = continueLine(position, lastLine);
+		}
+		if (line != null) {
+			lastLine = line;
+			return new SolverResult(SolverResult.Outcome.WINNABLE, line, 0,
+					System.nanoTime() - start);
+		}
+
+		SolverResult result = solver.solve(position, timeLimitMillis, cancel);
+		if (result.isWinnable()) {
+			knownLines.put(position.getHash(), result.getMoves());
+			lastLine = result.getMoves();
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the latest winnable position in the history by bisection. Once a
+	 * position is lost every later one is too, so only a handful of the
+	 * positions need checking, and most of those are answered from the
+	 * remembered lines or the solver's table
+	 *
+	 * @param history the position, which is moved about in the history
+	 * @param check the check this is, to give up once it's abandoned
+	 * @param cancel stops the solver once it's set
+	 * @return how many pairs back the position is, or -1 if there is none
+	 */
+	private int lastWinnable(MahjongEngine history, long check, AtomicBoolean cancel) {
+		int[] moves = new int[history.getRemovedCount()];
+		for (int i = 0; i < moves.length; i++) {
+			moves[i] = history.getRemoved(i);
+		}
+		int made = moves.length / 2;
+
+		// Everything up to winnable is known to win, everything from lost on
+		// is known not to, or couldn't be shown to in time
+		int winnable = -1;
+		int lost = made + 1;
+		while (lost - winnable > 1) {
+			int middle = winnable == -1 && lost == made + 1 ? made
+					: (winnable + lost) >>> 1;
+			if (current != check) {
+				return -1;
+			}
+			moveTo(history, moves, middle);
+			if (check(history, cancel).isWinnable()) {
+				winnable = middle;
+			} else {
+				lost = middle;
+			}
+		}
+		return winnable < 0 ? -1 : made - winnable;
+	}
+
+	/**
+	 * Takes back or replays moves until the engine has made the given number
+	 * of them
+	 *
+	 * @param engine
+	 * @param moves the removal history
+	 * @param pairs
+	 */
+	private static void moveTo(MahjongEngine engine, int[] moves, int pairs) {
+		while (engine.getRemovedCount() > pairs * 2) {
+			engine.takeBack();
+		}
+		while (engine.getRemovedCount() < pairs * 2) {
+			int index = engine.getRemovedCount();
+			engine.play(moves[index], moves[index + 1]);
+		}
+	}
+
+	/**
+	 * Tries to clear the board with what is left of an earlier winning line,
+	 * leaving out the pairs that have been removed since
+	 *
+	 * @param position
+	 * @param line
+	 * @return the rest of the line, or null if it doesn't win from here
+	 */
+	private int[] continueLine(MahjongEngine position, int[] line) {
+		MahjongEngine engine = new MahjongEngine(position);
+		int[] rest = new int[engine.getRemainingCount()];
+		int count = 0;
+		for (int i = 0; i + 1 < line.length; i += 2) {
+			boolean first = engine.isOccupied(line[i]);
+			boolean second = engine.isOccupied(line[i + 1]);
+			if (!first && !second) {
+				continue;
+			}
+			if (!first || !second || count + 2 > rest.length
+					|| !engine.isOpen(line[i]) || !engine.isOpen(line[i + 1])
+					|| !engine.matches(line[i], line[i + 1])) {
+				return null;
+			}
+			engine.play(line[i], line[i + 1]);
+			rest[count++] = line[i];
+			rest[count++] = line[i + 1];
+		}
+		if (engine.getRemainingCount() != 0) {
+			return null;
+		}
+		knownLines.put(position.getHash(), rest);
+		return rest;
+	}
+}
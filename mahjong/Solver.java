@@ -0,0 +1,533 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Works out exactly whether a position can be cleared, with a depth first
+ * search over copies of the engine. Positions that have been shown to be lost
+ * are remembered in a fixed size transposition table keyed by the engine's
+ * Zobrist hash, so the many move orders that lead to the same tiles are only
+ * searched once. The hash covers which group is on which position, so a lost
+ * position stays lost from one deal to the next and a Solver can keep its
+ * table between calls. A Solver isn't thread safe, but several can share a
+ * striped table, as ParallelSolver's do.
+ *
+ * Every group's remaining tiles are checked for stacks that can never be
+ * paired off, and a group whose remaining tiles are all open is cleared
+ * without trying anything else. Otherwise moves that uncover the most go
+ * first, and since a bad early choice can take forever to back out of, the
+ * search restarts with a shuffled order and a growing budget.
+ *
+ * Given an EndgameTable, small positions are looked up rather than searched,
+ * and given an EndgameTableBuilder, the small positions the search settles
+ * are recorded in it. Given a SolverCache, the position being solved is
+ * looked up there first and answered by following the stored winning moves to
+ * the end. The search itself doesn't consult the cache, but what it finds is
+ * stored there: every position of a winning line with its move, or the
+ * starting position as lost
+ */
+public class Solver {
+
+	/**
+	 * The default table size, as a power of two. 2^20 entries take 8MB
+	 */
+	public static final int DEFAULT_TABLE_BITS = 20;
+
+	// How many positions to search between looks at the clock
+	private static final int CHECK_INTERVAL = 1024;
+
+	// How many positions the first attempt gets before starting over
+	private static final long FIRST_RESTART = 1000;
+
+	private final TranspositionTable table;
+
+	// Set by whoever else this solver is working with, to stop it too
+	private final AtomicBoolean stop;
+	// Set by whoever asked for the solve that is running, to stop just that
+	private AtomicBoolean cancel = null;
+
+	private MahjongEngine engine;
+	// Which positions are somewhere underneath which, and where every tile of
+	// each match group was dealt
+	private boolean[][] beneath;
+	private int[][] groupPositions;
+	private int[][] moves;
+	private int[] scores;
+	private long nodes;
+	private long deadline;
+	private boolean stopped;
+	private long restartAt;
+	private boolean restarting;
+	private long noise;
+
+	private EndgameTable endgames = null;
+	private EndgameTableBuilder harvester = null;
+	private SolverCache cache = null;
+	private final int[] labels = new int[TileFace.GROUP_COUNT];
+	private final long[] board = new long[Bitboard.WORDS];
+	private final int[] endgameMoves = new int[MahjongEngine.MAX_MOVES * 2];
+
+	public Solver() {
+		this(DEFAULT_TABLE_BITS);
+	}
+
+	/**
+	 * Creates a solver with a transposition table of 2^tableBits entries
+	 *
+	 * @param tableBits
+	 */
+	public Solver(int tableBits) {
+		this(new TranspositionTable(tableBits), null);
+	}
+
+	/**
+	 * Creates a solver that uses the given table, and gives up whenever the
+	 * stop flag is set
+	 *
+	 * @param table
+	 * @param stop can be null
+	 */
+	public Solver(TranspositionTable table, AtomicBoolean stop) {
+		this.table = table;
+		this.stop = stop;
+	}
+
+	public TranspositionTable getTable() {
+		return table;
+	}
+
+	/**
+	 * Sets the table of endgames to look small positions up in
+	 *
+	 * @param endgames can be null
+	 */
+	public void setEndgameTable(EndgameTable endgames) {
+		this.endgames = endgames;
+	}
+
+	/**
+	 * Sets where to record the small positions the search settles
+	 *
+	 * @param harvester can be null
+	 */
+	public void setHarvester(EndgameTableBuilder harvester) {
+		this.harvester = harvester;
+	}
+
+	/**
+	 * Sets the cache to look the position being solved up in before
+	 * searching it, and to store the outcome in
+	 *
+	 * @param cache can be null
+	 */
+	public void setResultCache(SolverCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Forgets every position in the transposition table
+	 */
+	public void clear() {
+		table.clear();
+	}
+
+	/**
+	 * Searches for a way to clear the board from the engine's current
+	 * position. The engine itself isn't changed
+	 *
+	 * @param position
+	 * @param timeLimitMillis how long to search before giving up
+	 * @return
+	 */
+	public SolverResult solve(MahjongEngine position, long timeLimitMillis) {
+		return solve(position, timeLimitMillis, null);
+	}
+
+	/**
+	 * Searches for a way to clear the board from the engine's current
+	 * position, giving up and reporting that it timed out once the cancel
+	 * flag is set. The flag is only ever read, so one set from another thread
+	 * before the solve even starts still stops it. The engine itself isn't
+	 * changed
+	 *
+	 * @param position
+	 * @param timeLimitMillis how long to search before giving up
+	 * @param cancel can be null
+	 * @return
+	 */
+	public SolverResult solve(MahjongEngine position, long timeLimitMillis,
+			AtomicBoolean cancel) {
+		long start = System.nanoTime();
+		engine = new MahjongEngine(position);
+		prepare();
+		int maxDepth = engine.getRemainingCount() / 2 + 1;
+		if (moves == null || moves.length < maxDepth) {
+			moves = new int[maxDepth][MahjongEngine.MAX_MOVES * 2];
+		}
+		scores = new int[MahjongEngine.MAX_MOVES];
+		nodes = 0;
+		deadline = start + timeLimitMillis * 1000000L;
+		stopped = false;
+		this.cancel = cancel;
+
+		int startCount = engine.getRemovedCount();
+		long startHash = engine.getHash();
+		if (cache != null) {
+			SolverResult cached = lookUp(startCount, start);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		boolean won = false;
+		if (!isStuck()) {
+			// A move order that goes wrong early can take forever to back out
+			// of, so the search starts over with a shuffled order every so
+			// often, with more to spend each time. Lost positions stay in the
+			// table, so nothing proven is searched twice
+			noise = 0;
+			long budget = FIRST_RESTART;
+			do {
+				restartAt = nodes + budget;
+				restarting = false;
+				won = search(0);
+				budget += budget / 2;
+				noise = noise * 6364136223846793005L + 1442695040888963407L;
+			} while (!won && restarting && !stopped);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		if (won) {
+			int[] line = new int[engine.getRemovedCount() - startCount];
+			for (int i = 0; i < line.length; i++) {
+				line[i] = engine.getRemoved(startCount + i);
+			}
+			// Every position on the way to the end can be won too
+			if (harvester != null || cache != null) {
+				for (int i = line.length - 2; i >= 0; i -= 2) {
+					engine.takeBack();
+					if (harvester != null) {
+						harvester.record(engine, EndgameTable.WIN, labels, board);
+					}
+					if (cache != null) {
+						cache.putWinningMove(engine.getHash(), line[i], line[i + 1]);
+					}
+				}
+			}
+			return new SolverResult(SolverResult.Outcome.WINNABLE, line, nodes, elapsed);
+		}
+		if (cache != null && !stopped) {
+			cache.putLost(startHash);
+		}
+		return new SolverResult(stopped ? SolverResult.Outcome.TIMED_OUT
+				: SolverResult.Outcome.UNWINNABLE, new int[0], nodes, elapsed);
+	}
+
+	/**
+	 * Answers from the cache, following the winning move stored for each
+	 * position to the end. A line that breaks off, because part of it was
+	 * evicted or a move doesn't fit the position, is no answer
+	 *
+	 * @param startCount
+	 * @param start
+	 * @return the result, or null if the position has to be searched
+	 */
+	private SolverResult lookUp(int startCount, long start) {
+		int[] move;
+		while ((move = cache.lookup(engine.getHash())) != null) {
+			if (move.length == 0) {
+				if (engine.getRemovedCount() > startCount) {
+					// A stale record, since a winning move led here
+					break;
+				}
+				return new SolverResult(SolverResult.Outcome.UNWINNABLE, new int[0], 0,
+						System.nanoTime() - start);
+			}
+			int size = engine.getLayout().size();
+			if (move[0] < 0 || move[0] >= size || move[1] < 0 || move[1] >= size
+					|| !engine.isOccupied(move[0]) || !engine.isOccupied(move[1])
+					|| !engine.isOpen(move[0]) || !engine.isOpen(move[1])
+					|| !engine.matches(move[0], move[1])) {
+				break;
+			}
+			engine.play(move[0], move[1]);
+			if (engine.getRemainingCount() == 0) {
+				int[] line = new int[engine.getRemovedCount() - startCount];
+				for (int i = 0; i < line.length; i++) {
+					line[i] = engine.getRemoved(startCount + i);
+				}
+				while (engine.getRemovedCount() > startCount) {
+					engine.takeBack();
+				}
+				return new SolverResult(SolverResult.Outcome.WINNABLE, line, 0,
+						System.nanoTime() - start);
+			}
+		}
+		while (engine.getRemovedCount() > startCount) {
+			engine.takeBack();
+		}
+		return null;
+	}
+
+	/**
+	 * Tries every move from the current position, leaving the winning line
+	 * played on the engine if there is one
+	 *
+	 * @param depth
+	 * @return true if the board was cleared
+	 */
+	private boolean search(int depth) {
+		if (engine.getRemainingCount() == 0) {
+			return true;
+		}
+		if (++nodes % CHECK_INTERVAL == 0
+				&& ((cancel != null && cancel.get()) || (stop != null && stop.get())
+						|| System.nanoTime() > deadline)) {
+			stopped = true;
+		}
+		if (nodes >= restartAt) {
+			restarting = true;
+		}
+		if (stopped || restarting) {
+			return false;
+		}
+
+		long hash = engine.getHash();
+		if (table.contains(hash)) {
+			return false;
+		}
+		if (endgames != null && engine.getRemainingCount() <= EndgameTable.MAX_TILES) {
+			int known = endgames.lookup(engine, labels, board);
+			if (known == EndgameTable.LOSS) {
+				table.add(hash);
+				return false;
+			}
+			if (known == EndgameTable.WIN && followWin()) {
+				return true;
+			}
+		}
+
+		int[] buffer = moves[depth];
+		int count = orderMoves(buffer);
+		for (int i = 0; i < count; i++) {
+			engine.play(buffer[i * 2], buffer[i * 2 + 1]);
+			if (!isStuck(engine.getMatchGroupAt(buffer[i * 2]))
+					&& search(depth + 1)) {
+				return true;
+			}
+			engine.takeBack();
+			if (stopped || restarting) {
+				return false;
+			}
+		}
+
+		table.add(hash);
+		if (harvester != null) {
+			harvester.record(engine, EndgameTable.LOSS, labels, board);
+		}
+		return false;
+	}
+
+	/**
+	 * Plays out a position the endgame table says can be won, by making
+	 * moves that it says lead to positions that can be won too
+	 *
+	 * @return true if the board was cleared, otherwise the engine is left
+	 * as it was
+	 */
+	private boolean followWin() {
+		int start = engine.getRemovedCount();
+		while (engine.getRemainingCount() > 0) {
+			int count = engine.getMoves(endgameMoves);
+			boolean found = false;
+			for (int i = 0; i < count && !found; i++) {
+				engine.play(endgameMoves[i * 2], endgameMoves[i * 2 + 1]);
+				found = engine.getRemainingCount() == 0
+						|| endgames.lookup(engine, labels, board) == EndgameTable.WIN;
+				if (!found) {
+					engine.takeBack();
+				}
+			}
+			if (!found) {
+				while (engine.getRemovedCount() > start) {
+					engine.takeBack();
+				}
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Works out the stacking order of the layout and where each group's tiles
+	 * are for the engine being searched
+	 */
+	private void prepare() {
+		Layout layout = engine.getLayout();
+		if (beneath == null || beneath.length != layout.size()) {
+			beneath = new boolean[layout.size()][layout.size()];
+			for (int i = 0; i < layout.size(); i++) {
+				markBeneath(layout, beneath[i], i);
+			}
+		}
+
+		int[] counts = new int[TileFace.GROUP_COUNT];
+		for (int i = 0; i < layout.size(); i++) {
+			counts[TileFace.getGroup(engine.getFace(i))]++;
+		}
+		groupPositions = new int[TileFace.GROUP_COUNT][];
+		for (int group = 0; group < TileFace.GROUP_COUNT; group++) {
+			groupPositions[group] = new int[counts[group]];
+			counts[group] = 0;
+		}
+		for (int i = 0; i < layout.size(); i++) {
+			int group = TileFace.getGroup(engine.getFace(i));
+			groupPositions[group][counts[group]++] = i;
+		}
+	}
+
+	private static void markBeneath(Layout layout, boolean[] marks, int position) {
+		for (int below : layout.getBelow(position)) {
+			if (!marks[below]) {
+				marks[below] = true;
+				markBeneath(layout, marks, below);
+			}
+		}
+	}
+
+	/**
+	 * Checks every group for tiles that are stacked so they can never all be
+	 * paired off
+	 *
+	 * @return
+	 */
+	private boolean isStuck() {
+		for (int group = 0; group < TileFace.GROUP_COUNT; group++) {
+			if (isStuck(group)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks whether a group's remaining tiles are stacked so they can never
+	 * all be paired off. A tile can't be removed while anything is on top of
+	 * it, so a stack of more than half of a group's tiles means two of them
+	 * have to be removed together while one is still on the other
+	 *
+	 * @param group
+	 * @return
+	 */
+	private boolean isStuck(int group) {
+		int remaining = engine.getRemainingCount(group);
+		if (remaining == 0) {
+			return false;
+		}
+		int[] positions = groupPositions[group];
+		int longest = 1;
+		for (int top : positions) {
+			if (!engine.isOccupied(top)) {
+				continue;
+			}
+			for (int middle : positions) {
+				if (!engine.isOccupied(middle) || !beneath[top][middle]) {
+					continue;
+				}
+				longest = Math.max(longest, 2);
+				for (int bottom : positions) {
+					if (engine.isOccupied(bottom) && beneath[middle][bottom]) {
+						longest = 3;
+					}
+				}
+			}
+		}
+		return longest > remaining / 2;
+	}
+
+	/**
+	 * Lists the moves worth trying, best first
+	 *
+	 * @param buffer
+	 * @return the number of moves
+	 */
+	private int orderMoves(int[] buffer) {
+		int count = engine.getMoves(buffer);
+
+		// When every tile left in a group is open, removing two of them can't
+		// hurt, since nothing can close them again. That move is all there is
+		// to try
+		for (int i = 0; i < count; i++) {
+			int group = engine.getMatchGroupAt(buffer[i * 2]);
+			if (engine.getOpenCount(group) == engine.getRemainingCount(group)) {
+				buffer[0] = buffer[i * 2];
+				buffer[1] = buffer[i * 2 + 1];
+				return 1;
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			scores[i] = score(buffer[i * 2]) + score(buffer[i * 2 + 1])
+					+ jitter(buffer[i * 2] * 31 + buffer[i * 2 + 1]);
+		}
+
+		// Insertion sort, the lists are short
+		for (int i = 1; i < count; i++) {
+			int score = scores[i];
+			int first = buffer[i * 2];
+			int second = buffer[i * 2 + 1];
+			int j = i - 1;
+			while (j >= 0 && scores[j] < score) {
+				scores[j + 1] = scores[j];
+				buffer[(j + 1) * 2] = buffer[j * 2];
+				buffer[(j + 1) * 2 + 1] = buffer[j * 2 + 1];
+				j--;
+			}
+			scores[j + 1] = score;
+			buffer[(j + 1) * 2] = first;
+			buffer[(j + 1) * 2 + 1] = second;
+		}
+		return count;
+	}
+
+	/**
+	 * Returns a number that depends on the move and changes with each restart.
+	 * It is 0 on the first try, so the scores alone decide, and after that it
+	 * is large enough to shuffle the order well away from the one that failed
+	 *
+	 * @param move
+	 * @return from 0 to 255
+	 */
+	private int jitter(int move) {
+		if (noise == 0) {
+			return 0;
+		}
+		long mixed = (noise ^ move) * 0x9E3779B97F4A7C15L;
+		return (int) (mixed >>> 56);
+	}
+
+	/**
+	 * Rates how much removing a tile helps: the tiles it is holding down or
+	 * hemming in, and how high up it is
+	 *
+	 * @param position
+	 * @return
+	 */
+	private int score(int position) {
+		Layout layout = engine.getLayout();
+		int score = 0;
+		for (int blocked : layout.getBelow(position)) {
+			if (engine.isOccupied(blocked)) {
+				score += 4;
+			}
+		}
+		for (int blocked : layout.getRightNeighbours(position)) {
+			if (engine.isOccupied(blocked)) {
+				score += 2;
+			}
+		}
+		for (int blocked : layout.getLeftNeighbours(position)) {
+			if (engine.isOccupied(blocked)) {
+				score += 2;
+			}
+		}
+		return score - layout.getZ(position);
+	}
+}
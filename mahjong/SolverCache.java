@@ -0,0 +1,314 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+
+/**
+ * Solver outcomes kept on disk, so a position that has been solved once is a
+ * single lookup from then on, even in a later run. Positions are keyed by the
+ * engine's Zobrist hash, and a winnable one is stored with the move to make
+ * from it, which leads to another stored position and so on to the end.
+ *
+ * The file is memory mapped and has three parts: a header, an index and a
+ * log. The log is a ring of fixed size records that are only ever appended,
+ * so once it's full each new record evicts the oldest. The index maps a hash
+ * straight to the last record written for a slot. A newer hash that lands on
+ * the same slot replaces the older one, and an index entry whose record has
+ * since been overwritten is recognised by the record's own hash not matching.
+ *
+ * The cache lives in a directory of the user's own, and is created the first
+ * time it's opened. Only one process can have it open at a time, so a second
+ * game runs without it rather than appending to the same file
+ */
+public class SolverCache {
+
+	/**
+	 * The cache's file name
+	 */
+	public static final String CACHE_FILE = "solver.cache";
+
+	/**
+	 * The directory under the user's home that the cache is kept in
+	 */
+	public static final String USER_DIRECTORY = ".mahjong";
+
+	/**
+	 * The default number of records, as a power of two. 2^18 records take
+	 * 4MB, and the index 2MB
+	 */
+	public static final int DEFAULT_BITS = 18;
+
+	private static final long MAGIC = 0x4d4a536f6c766531L;
+	private static final int HEADER_SIZE = 32;
+	private static final int MAGIC_OFFSET = 0;
+	private static final int BITS_OFFSET = 8;
+	private static final int APPENDED_OFFSET = 16;
+
+	// A record is the hash, the outcome and the two positions of the move
+	private static final int RECORD_SIZE = 16;
+	private static final int HASH_OFFSET = 0;
+	private static final int FIRST_OFFSET = 8;
+	private static final int SECOND_OFFSET = 10;
+	private static final int OUTCOME_OFFSET = 12;
+
+	private static final byte WIN = 1;
+	private static final byte LOSS = 2;
+
+	private final MappedByteBuffer buffer;
+	// Held for as long as the cache is open, which keeps its channel open too
+	private final FileLock lock;
+	private final int records;
+	private final int indexSlots;
+	private final int logStart;
+	// Records appended over the cache's whole life, so the ring position is
+	// this modulo the number of records
+	private long appended;
+	private long hits = 0;
+	private long misses = 0;
+
+	private SolverCache(MappedByteBuffer buffer, FileLock lock, int bits, long appended) {
+		this.buffer = buffer;
+		this.lock = lock;
+		this.appended = appended;
+		records = 1 << bits;
+		indexSlots = records * 2;
+		logStart = HEADER_SIZE + indexSlots * 4;
+	}
+
+	/**
+	 * Returns the directory the game keeps its cache in
+	 *
+	 * @return
+	 */
+	public static File getUserDirectory() {
+		return new File(System.getProperty("user.home"), USER_DIRECTORY);
+	}
+
+	/**
+	 * Opens the cache in the given directory, creating it or starting it
+	 * over if it's missing, damaged or a different size
+	 *
+	 * @param directory
+	 * @param bits the number of records as a power of two
+	 * @return the cache, or null if it couldn't be opened or another process
+	 * has it open
+	 */
+	public static SolverCache open(File directory, int bits) {
+		if (bits < 1 || bits > 24) {
+			throw new IllegalArgumentException("Cache bits must be from 1 to 24, not " + bits);
+		}
+		File file = new File(directory, CACHE_FILE);
+		long length = length(bits);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			System.err.println("Couldn't create " + directory);
+			return null;
+		}
+		RandomAccessFile output = null;
+		try {
+			output = new RandomAccessFile(file, "rw");
+			FileLock lock;
+			try {
+				lock = output.getChannel().tryLock();
+			} catch (OverlappingFileLockException e) {
+				lock = null;
+			}
+			if (lock == null) {
+				System.err.println(file + " is in use, so positions won't be cached");
+				return null;
+			}
+			boolean fresh = output.length() != length;
+			if (fresh) {
+				output.setLength(0);
+				output.setLength(length);
+			}
+			MappedByteBuffer buffer = output.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0, length);
+			if (fresh || buffer.getLong(MAGIC_OFFSET) != MAGIC
+					|| buffer.getInt(BITS_OFFSET) != bits
+					|| buffer.getLong(APPENDED_OFFSET) < 0) {
+				for (int i = 0; i < HEADER_SIZE + (2 << bits) * 4; i += 8) {
+					buffer.putLong(i, 0);
+				}
+				buffer.putInt(BITS_OFFSET, bits);
+				buffer.putLong(APPENDED_OFFSET, 0);
+				buffer.putLong(MAGIC_OFFSET, MAGIC);
+			}
+			SolverCache cache = new SolverCache(buffer, lock, bits,
+					buffer.getLong(APPENDED_OFFSET));
+			// Left open, since closing it would give up the lock
+			output = null;
+			return cache;
+		} catch (IOException e) {
+			System.err.println("Couldn't map " + file + ": " + e.getMessage());
+			return null;
+		} finally {
+			close(output);
+		}
+	}
+
+	private static void close(RandomAccessFile file) {
+		if (file == null) {
+			return;
+		}
+		try {
+			file.close();
+		} catch (IOException e) {
+			System.err.println("Couldn't close the cache: " + e.getMessage());
+		}
+	}
+
+	private static long length(int bits) {
+		return HEADER_SIZE + (2L << bits) * 4 + ((long) RECORD_SIZE << bits);
+	}
+
+	/**
+	 * Finds the record for a hash
+	 *
+	 * @param hash
+	 * @return the record's offset in the file, or -1 if it isn't cached
+	 */
+	private int find(long hash) {
+		int entry = buffer.getInt(HEADER_SIZE + indexSlot(hash) * 4);
+		// Anything but a record number is a damaged index entry
+		if (entry <= 0 || entry > records) {
+			return -1;
+		}
+		int record = logStart + (entry - 1) * RECORD_SIZE;
+		return buffer.getLong(record + HASH_OFFSET) == hash ? record : -1;
+	}
+
+	private int indexSlot(long hash) {
+		long mixed = hash * 0x9E3779B97F4A7C15L;
+		return (int) (mixed >>> 32) & (indexSlots - 1);
+	}
+
+	/**
+	 * Looks up a position
+	 *
+	 * @param hash
+	 * @return null if the position isn't cached, an empty array if it's lost,
+	 * or the two positions of the move that wins from it
+	 */
+	public synchronized int[] lookup(long hash) {
+		int record = find(hash);
+		if (record < 0) {
+			misses++;
+			return null;
+		}
+		hits++;
+		if (buffer.get(record + OUTCOME_OFFSET) == LOSS) {
+			return new int[0];
+		}
+		return new int[]{buffer.getShort(record + FIRST_OFFSET),
+				buffer.getShort(record + SECOND_OFFSET)};
+	}
+
+	/**
+	 * Stores that a position can't be won
+	 *
+	 * @param hash
+	 */
+	public synchronized void putLost(long hash) {
+		append(hash, LOSS, 0, 0);
+	}
+
+	/**
+	 * Stores the move that wins from a position
+	 *
+	 * @param hash
+	 * @param first
+	 * @param second
+	 */
+	public synchronized void putWinningMove(long hash, int first, int second) {
+		append(hash, WIN, first, second);
+	}
+
+	private void append(long hash, byte outcome, int first, int second) {
+		int slot = (int) (appended & (records - 1));
+		int record = logStart + slot * RECORD_SIZE;
+		buffer.putLong(record + HASH_OFFSET, hash);
+		buffer.putShort(record + FIRST_OFFSET, (short) first);
+		buffer.putShort(record + SECOND_OFFSET, (short) second);
+		buffer.put(record + OUTCOME_OFFSET, outcome);
+		buffer.putInt(HEADER_SIZE + indexSlot(hash) * 4, slot + 1);
+		appended++;
+		buffer.putLong(APPENDED_OFFSET, appended);
+	}
+
+	/**
+	 * Returns the number of records held, at most the capacity
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return (int) Math.min(appended, records);
+	}
+
+	/**
+	 * Returns how many lookups found a record and how many didn't, since the
+	 * cache was opened
+	 *
+	 * @return the hits and the misses
+	 */
+	public synchronized long[] getStats() {
+		return new long[]{hits, misses};
+	}
+
+	/**
+	 * Solves some numbered games twice through the cache and prints how long
+	 * each pass took. Run it again and the first pass is answered from the
+	 * file too. Arguments are optional: -d and a directory, -t and a time
+	 * limit per game in milliseconds, and the first and last game numbers
+	 *
+	 * @param args
+	 */
+	public static void main(String[] args) {
+		File directory = getUserDirectory();
+		long timeLimit = 2000;
+		long first = 0;
+		long last = 19;
+		int numbers = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-d") && i + 1 < args.length) {
+				directory = new File(args[++i]);
+			} else if (args[i].equals("-t") && i + 1 < args.length) {
+				timeLimit = Long.parseLong(args[++i]);
+			} else if (numbers++ == 0) {
+				first = Long.parseLong(args[i]);
+			} else {
+				last = Long.parseLong(args[i]);
+			}
+		}
+		SolverCache cache = open(directory, DEFAULT_BITS);
+		if (cache == null) {
+			return;
+		}
+		System.out.println("Starting with " + cache.size() + " positions");
+		MahjongEngine engine = new MahjongEngine();
+		for (int pass = 1; pass <= 2; pass++) {
+			// A new solver each pass, so nothing is remembered but the cache
+			Solver solver = new Solver();
+			solver.setResultCache(cache);
+			long start = System.nanoTime();
+			int winnable = 0;
+			long nodes = 0;
+			for (long game = first; game <= last; game++) {
+				engine.deal(game);
+				SolverResult result = solver.solve(engine, timeLimit);
+				if (result.isWinnable()) {
+					winnable++;
+				}
+				nodes += result.getNodes();
+			}
+			long[] stats = cache.getStats();
+			System.out.println(String.format("Pass %d: %d of %d winnable, %d positions"
+					+ " searched, %.1f ms; %d hits and %d misses so far",
+					pass, winnable, last - first + 1, nodes,
+					(System.nanoTime() - start) / 1e6, stats[0], stats[1]));
+		}
+		System.out.println("Holding " + cache.size() + " positions");
+	}
+}
@@ -0,0 +1,72 @@
+
+
+/**
+ * What a Solver found out about a position, and how much work it took
+ */
+public class SolverResult {
+
+	public enum Outcome {
+		WINNABLE, UNWINNABLE, TIMED_OUT
+	}
+
+	private final Outcome outcome;
+	private final int[] moves;
+	private final long nodes;
+	private final long elapsedNanos;
+
+	public SolverResult(Outcome outcome, int[] moves, long nodes, long elapsedNanos) {
+		this.outcome = outcome;
+		this.moves = moves;
+		this.nodes = nodes;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	public boolean isWinnable() {
+		return outcome == Outcome.WINNABLE;
+	}
+
+	public boolean isUnwinnable() {
+		return outcome == Outcome.UNWINNABLE;
+	}
+
+	/**
+	 * Returns the winning line, pairs of positions one after the other
+	 *
+	 * @return the moves, or an empty array unless the position is winnable
+	 */
+	public int[] getMoves() {
+		return moves;
+	}
+
+	/**
+	 * Returns the number of positions the search visited
+	 *
+	 * @return
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Returns the search speed in positions per second
+	 *
+	 * @return
+	 */
+	public long getNodesPerSecond() {
+		return elapsedNanos <= 0 ? 0 : nodes * 1000000000L / elapsedNanos;
+	}
+
+	@Override
+	public String toString() {
+		return outcome + " after " + nodes + " positions in "
+				+ (elapsedNanos / 1000000) + " ms";
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * Solves the position and follows the winning line. When the solver runs out
+ * of time or finds that the game is lost, it plays the greedy move instead and
+ * tries solving again after it
+ */
+public class SolverStrategy implements Strategy {
+
+	/**
+	 * The default time each solve gets, in milliseconds
+	 */
+	public static final long DEFAULT_TIME_LIMIT = 200;
+
+	private final Solver solver = new Solver();
+	private final GreedyStrategy fallback = new GreedyStrategy();
+	private final long timeLimitMillis;
+	private int[] line = null;
+	private int next;
+	// How many tiles had been removed when the line was found, to tell that
+	// the engine is still following it
+	private int lineStart;
+
+	public SolverStrategy() {
+		this(DEFAULT_TIME_LIMIT);
+	}
+
+	/**
+	 * Creates a strategy that gives each solve the given time
+	 *
+	 * @param timeLimitMillis
+	 */
+	public SolverStrategy(long timeLimitMillis) {
+		this.timeLimitMillis = timeLimitMillis;
+	}
+
+	@Override
+	public String getName() {
+		return "solver";
+	}
+
+	@Override
+	public int chooseMove(MahjongEngine engine, int[] moves, int count) {
+		int index = -1;
+		if (line != null && engine.getRemovedCount() == lineStart + next) {
+			index = indexOf(moves, count, line[next], line[next + 1]);
+		}
+		if (index < 0) {
+			SolverResult result = solver.solve(engine, timeLimitMillis);
+			if (!result.isWinnable() || result.getMoves().length == 0) {
+				line = null;
+				return fallback.chooseMove(engine, moves, count);
+			}
+			line = result.getMoves();
+			next = 0;
+			lineStart = engine.getRemovedCount();
+			index = indexOf(moves, count, line[0], line[1]);
+			if (index < 0) {
+				line = null;
+				return fallback.chooseMove(engine, moves, count);
+			}
+		}
+		next += 2;
+		if (next >= line.length) {
+			line = null;
+		}
+		return index;
+	}
+
+	private static int indexOf(int[] moves, int count, int first, int second) {
+		for (int i = 0; i < count; i++) {
+			if ((moves[i * 2] == first && moves[i * 2 + 1] == second)
+					|| (moves[i * 2] == second && moves[i * 2 + 1] == first)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
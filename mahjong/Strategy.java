@@ -0,0 +1,25 @@
+/**
+ * An automated player. Given the moves on offer it picks one, and a game is
+ * played by asking it again after every move until there are none left.
+ * Strategies can keep state between moves, so each thread playing games
+ * needs instances of its own
+ */
+public interface Strategy {
+
+	/**
+	 * Returns a short name to report results under
+	 *
+	 * @return
+	 */
+	String getName();
+
+	/**
+	 * Picks the next move
+	 *
+	 * @param engine the position, which must be left as it was
+	 * @param moves the moves on offer, as MahjongEngine.getMoves lists them
+	 * @param count the number of moves, at least one
+	 * @return the index of the move to make
+	 */
+	int chooseMove(MahjongEngine engine, int[] moves, int count);
+}
@@ -6,6 +6,7 @@ import java.awt.Dimension;
 import java.awt.GradientPaint;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Point;
 
 import javax.swing.JPanel;
 
@@ -19,29 +20,73 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 	protected static final int FACE_WIDTH = WIDTH - OFFSET;
 	protected static final int FACE_HEIGHT = HEIGHT - OFFSET;
 
+	protected static final Color BLUE = Color.BLUE;
+	protected static final Color BLACK = Color.BLACK;
+	protected static final Color GREEN = new Color(0, 150, 0);
+	protected static final Color RED = Color.RED;
+	protected static final Color WHITE = Color.WHITE;
+	protected static final Color IVORY = new Color(245, 245, 214);
+	protected static final Color LIGHT_GRAY = Color.LIGHT_GRAY;
+	protected static final Color LILAC = new Color(255, 185, 255);
+	protected static final Color HIGHLIGHT = LILAC;
+	protected static final Color HINT = GREEN;
+
 	protected boolean drawRound = true;
 
-	protected Integer xPos = null;
-	protected Integer yPos = null;
-	protected Integer zPos = null;
-
-	protected final Color BLUE = Color.BLUE;
-	protected final Color BLACK = Color.BLACK;
-	protected final Color GREEN = new Color(0, 150, 0);
-	protected final Color RED = Color.RED;
-	protected final Color WHITE = Color.WHITE;
-	protected final Color IVORY = new Color(245, 245, 214);
-	protected final Color LIGHT_GRAY = Color.LIGHT_GRAY;
-	protected final Color LILAC = new Color(255, 185, 255);
-	protected final Color HIGHLIGHT = LILAC;
-	protected final Color HINT = GREEN;
+	// The shared face this tile shows, and where it sits in the game's
+	// layout, the position being -1 until it is dealt
+	protected final TileFace face;
+	protected Layout layout = null;
+	protected int position = -1;
 
 	private boolean isSelected = false;
 	private boolean isHint = false;
 	protected boolean isDirty = false;
 
+	protected Tile(TileFace face) {
+		if (face == null) {
+			throw new IllegalArgumentException("A tile needs a face");
+		}
+		this.face = face;
+
+		setToolTipText(face.toString());
+	}
+
+	/**
+	 * Creates the tile that draws the given face
+	 *
+	 * @param face
+	 * @return
+	 */
+	public static Tile create(TileFace face) {
+		switch (face.getKind()) {
+			case CHARACTER:
+				return new CharacterTile(face.getSymbol());
+			case WHITE_DRAGON:
+				return new WhiteDragonTile();
+			case BAMBOO_1:
+				return new Bamboo1Tile();
+			case BAMBOO:
+				return new BambooTile(face.getRank());
+			case CIRCLE:
+				return new CircleTile(face.getRank());
+			case FLOWER:
+				return new FlowerTile(face.getImageName());
+			default:
+				return new SeasonTile(face.getImageName());
+		}
+	}
+
+	public TileFace getFace() {
+		return face;
+	}
+
 	public boolean matches(Tile otherTile) {
-		return otherTile != null && otherTile.getClass() == this.getClass();
+		return otherTile != null && face.matches(otherTile.face);
+	}
+
+	private boolean isPlaced() {
+		return layout != null && position >= 0;
 	}
 
 	@Override
@@ -52,13 +97,43 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 		setOpaque(false);
 		setPreferredSize(new Dimension(61, 71));
 
-		if (drawRound) {
-			paintRound(g);
+		paintTile(g);
+	}
+
+	/**
+	 * Draws the tile as it is now, at the origin
+	 *
+	 * @param g
+	 */
+	protected void paintTile(Graphics g) {
+		TileAtlas.getInstance().draw(g, face, drawRound,
+				isSelected ? TileAtlas.SELECTED : isHint ? TileAtlas.HINTED : TileAtlas.NORMAL);
+	}
+
+	/**
+	 * Draws the tile the slow way, its body in the given colour and then its
+	 * face, which is how the atlas draws each of its images
+	 *
+	 * @param g
+	 * @param round
+	 * @param color the colour the top of the tile shades to
+	 */
+	protected void render(Graphics g, boolean round, Color color) {
+		if (round) {
+			paintRound(g, color);
 		} else {
-			paintSquare(g);
+			paintSquare(g, color);
 		}
+		paintFace(g);
 	}
 
+	/**
+	 * Draws what is on the face of the tile, over its body
+	 *
+	 * @param g
+	 */
+	abstract protected void paintFace(Graphics g);
+
 	protected void highlight(boolean isSelected) {
 		this.isSelected = isSelected;
 		revalidate();
@@ -69,11 +144,34 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 		revalidate();
 	}
 
+	protected boolean isHinted() {
+		return isHint;
+	}
+
 	protected void place(int parentWidth, int parentHeight) {
-		if (xPos == null || yPos == null || zPos == null) {
+		if (!isPlaced()) {
 			setLocation(parentWidth / 2 - WIDTH / 2, parentHeight / 2 - HEIGHT / 2);
 			return;
 		}
+		Point location = new Point();
+		locate(layout, position, parentWidth, parentHeight, location);
+		setLocation(location);
+	}
+
+	/**
+	 * Works out where the tile at a layout position goes on a board
+	 *
+	 * @param layout
+	 * @param position
+	 * @param parentWidth the board's
+	 * @param parentHeight the board's
+	 * @param location set to the tile's top left corner
+	 */
+	protected static void locate(Layout layout, int position, int parentWidth,
+			int parentHeight, Point location) {
+		int xPos = layout.getX(position);
+		int yPos = layout.getY(position);
+		int zPos = layout.getZ(position);
 
 		int baseX = parentWidth / 2 - WIDTH / 2;
 		int baseY = parentHeight / 2 - HEIGHT / 2;
@@ -81,10 +179,9 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 		int offsetY = offsetX * -1;
 		int tileOffsetX = WIDTH * xPos - (WIDTH / 2 + 1) * (xPos != 0 ? xPos / Math.abs(xPos) : xPos);
 		int tileOffsetY = (HEIGHT - 5) * yPos * -1 + (HEIGHT / 2 - 3) * (yPos != 0 ? yPos / Math.abs(yPos) : yPos);
-		int xLoc = baseX + offsetX + tileOffsetX;
-		int yLoc = baseY + offsetY + tileOffsetY;
 
-		setLocation(xLoc, yLoc);
+		location.x = baseX + offsetX + tileOffsetX;
+		location.y = baseY + offsetY + tileOffsetY;
 	}
 
 	@Override
@@ -97,29 +194,31 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 		// so we just ignore it and don't make any changes. equals does the
 		// opposite in this case, so it doesn't *exactly* follow the code
 		// convention, but this makes much more sense in this case
-		if (xPos == null || otherTile.xPos == null) {
-			return 0;
-		} else if (yPos == null || otherTile.yPos == null) {
-			return 0;
-		} else if (zPos == null || otherTile.zPos == null) {
+		if (!isPlaced() || !otherTile.isPlaced()) {
 			return 0;
 		}
+		int xPos = layout.getX(position);
+		int yPos = layout.getY(position);
+		int zPos = layout.getZ(position);
+		int otherXPos = otherTile.layout.getX(otherTile.position);
+		int otherYPos = otherTile.layout.getY(otherTile.position);
+		int otherZPos = otherTile.layout.getZ(otherTile.position);
 
 		// If one tile has a higher zPos than another, it is by definition
 		// greater than that other
-		int currentComparison = zPos.compareTo(otherTile.zPos);
+		int currentComparison = Integer.compare(zPos, otherZPos);
 		if (currentComparison != 0) {
 			return currentComparison;
 		}
 
 		// On rows where the yPos is equal OR on the 1, -1 and 0 rows together,
 		// we compare the xPos
-		if (yPos.equals(otherTile.yPos)
-				|| (Math.abs(yPos) == 1 && otherTile.yPos == 0)
-				|| (Math.abs(otherTile.yPos) == 1 && yPos == 0)) {
-			currentComparison = xPos.compareTo(otherTile.xPos);
+		if (yPos == otherYPos
+				|| (Math.abs(yPos) == 1 && otherYPos == 0)
+				|| (Math.abs(otherYPos) == 1 && yPos == 0)) {
+			currentComparison = Integer.compare(xPos, otherXPos);
 		} else {
-			currentComparison = yPos.compareTo(otherTile.yPos);
+			currentComparison = Integer.compare(yPos, otherYPos);
 		}
 
 		return currentComparison;
@@ -134,32 +233,30 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 			return false;
 		}
 		Tile otherTile = (Tile) otherObject;
-		if (xPos == null || otherTile.xPos == null) {
-			return false;
-		} else if (yPos == null || otherTile.yPos == null) {
-			return false;
-		} else if (zPos == null || otherTile.zPos == null) {
+		if (!isPlaced() || !otherTile.isPlaced()) {
 			return false;
 		}
 
-		return xPos.equals(otherTile.xPos) && yPos.equals(otherTile.yPos)
-				&& zPos.equals(otherTile.zPos);
+		return layout == otherTile.layout && position == otherTile.position;
 	}
 
 	@Override
 	public int hashCode() {
 		int hash = 1;
-		if (xPos == null || yPos == null || zPos == null) {
+		if (!isPlaced()) {
 			return hash;
 		}
-		hash = hash * 11 + xPos.hashCode();
-		hash = hash * 13 + yPos.hashCode();
-		hash = hash * 17 + zPos.hashCode();
+		hash = hash * 11 + position;
 
 		return hash;
 	}
 
-	private void paintSquare(Graphics g) {
+	@Override
+	public String toString() {
+		return face.toString();
+	}
+
+	private void paintSquare(Graphics g, Color color) {
 		Graphics2D g2 = (Graphics2D) g;
 		GradientPaint paint = new GradientPaint(0, HEIGHT, IVORY, 10, 0, LILAC);
 
@@ -187,7 +284,7 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 		g2.drawPolygon(new int[]{5, 10, WIDTH + 10, WIDTH + 5},
 				new int[]{HEIGHT, HEIGHT - 5, HEIGHT - 5, HEIGHT}, 4);
 
-		paint = new GradientPaint(WIDTH, 0, WHITE, 10, HEIGHT, isSelected ? HIGHLIGHT : isHint ? HINT : IVORY);
+		paint = new GradientPaint(WIDTH, 0, WHITE, 10, HEIGHT, color);
 		g2.setPaint(paint);
 
 		g2.fillRect(10, 0, WIDTH, HEIGHT - 5);
@@ -195,7 +292,7 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 		g2.drawRect(10, 0, WIDTH, HEIGHT - 5);
 	}
 
-	private void paintRound(Graphics g) {
+	private void paintRound(Graphics g, Color color) {
 		Graphics2D g2 = (Graphics2D) g;
 		GradientPaint paint = new GradientPaint(0, HEIGHT, WHITE, 5, 5, LILAC);
 
@@ -222,7 +319,7 @@ abstract public class Tile extends JPanel implements Comparable<Tile> {
 		g2.setColor(Color.LIGHT_GRAY);
 		g2.drawRoundRect(5, 5, WIDTH, HEIGHT - 5, 15, 15);
 
-		paint = new GradientPaint(WIDTH, 0, WHITE, 10, HEIGHT, isSelected ? HIGHLIGHT : isHint ? HINT : IVORY);
+		paint = new GradientPaint(WIDTH, 0, WHITE, 10, HEIGHT, color);
 		g2.setPaint(paint);
 
 		g2.fillRoundRect(11, 1, WIDTH - 1, HEIGHT - 6, 16, 16);
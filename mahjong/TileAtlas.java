@@ -0,0 +1,118 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * Every tile drawn once, ahead of time, so that painting a tile is a single
+ * image copy instead of the gradients of its body and the shapes and text of
+ * its face. There is a page of images for round corners and one for square
+ * ones, each with a row for every state a tile can be drawn in and a column
+ * for every face, so switching corners only means reading the other page.
+ *
+ * The pages are made compatible with the screen so they can be copied
+ * straight to it, or are plain translucent images when there is no screen.
+ * They're drawn at the screen's scale, so on a high resolution screen each
+ * image has as many pixels as the tile covers there and stays sharp
+ */
+public class TileAtlas {
+
+	/**
+	 * The states a tile can be drawn in, which are the rows of a page
+	 */
+	public static final int NORMAL = 0;
+	public static final int SELECTED = 1;
+	public static final int HINTED = 2;
+
+	private static final int STATES = 3;
+
+	/**
+	 * The size of each image, which is the whole tile with its sides
+	 */
+	public static final int SPRITE_WIDTH = Tile.WIDTH + 11;
+	public static final int SPRITE_HEIGHT = Tile.HEIGHT + 6;
+
+	private static TileAtlas instance = null;
+
+	private final BufferedImage roundPage;
+	private final BufferedImage squarePage;
+	// The screen's scale, and the size of each image on the pages in pixels
+	private final double scaleX;
+	private final double scaleY;
+	private final int cellWidth;
+	private final int cellHeight;
+
+	private TileAtlas() {
+		GraphicsConfiguration configuration = GraphicsEnvironment.isHeadless() ? null
+				: GraphicsEnvironment.getLocalGraphicsEnvironment()
+						.getDefaultScreenDevice().getDefaultConfiguration();
+		AffineTransform transform = configuration == null ? new AffineTransform()
+				: configuration.getDefaultTransform();
+		scaleX = transform.getScaleX();
+		scaleY = transform.getScaleY();
+		cellWidth = (int) Math.ceil(SPRITE_WIDTH * scaleX);
+		cellHeight = (int) Math.ceil(SPRITE_HEIGHT * scaleY);
+		roundPage = createPage(configuration, true);
+		squarePage = createPage(configuration, false);
+	}
+
+	/**
+	 * Returns the atlas, drawing it the first time. Call this on the event
+	 * dispatch thread, since the tiles are drawn by Tile components
+	 *
+	 * @return
+	 */
+	public static synchronized TileAtlas getInstance() {
+		if (instance == null) {
+			instance = new TileAtlas();
+		}
+		return instance;
+	}
+
+	private BufferedImage createPage(GraphicsConfiguration configuration, boolean round) {
+		int width = cellWidth * TileFace.COUNT;
+		int height = cellHeight * STATES;
+		BufferedImage page;
+		if (configuration == null) {
+			page = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		} else {
+			page = configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		}
+
+		Color[] colors = new Color[STATES];
+		colors[NORMAL] = Tile.IVORY;
+		colors[SELECTED] = Tile.HIGHLIGHT;
+		colors[HINTED] = Tile.HINT;
+		for (int id = 0; id < TileFace.COUNT; id++) {
+			Tile tile = Tile.create(TileFace.get(id));
+			for (int state = 0; state < STATES; state++) {
+				Graphics2D g = page.createGraphics();
+				g.clipRect(id * cellWidth, state * cellHeight, cellWidth, cellHeight);
+				g.translate(id * cellWidth, state * cellHeight);
+				g.scale(scaleX, scaleY);
+				tile.render(g, round, colors[state]);
+				g.dispose();
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * Draws a tile at the origin
+	 *
+	 * @param g
+	 * @param face
+	 * @param round
+	 * @param state NORMAL, SELECTED or HINTED
+	 */
+	public void draw(Graphics g, TileFace face, boolean round, int state) {
+		int x = face.getId() * cellWidth;
+		int y = state * cellHeight;
+		g.drawImage(round ? roundPage : squarePage, 0, 0, SPRITE_WIDTH, SPRITE_HEIGHT,
+				x, y, x + cellWidth, y + cellHeight, null);
+	}
+}
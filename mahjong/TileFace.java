@@ -0,0 +1,222 @@
+
+
+/**
+ * The 42 distinct faces a tile can have. There is exactly one of each, shared
+ * by every tile showing it, so tiles only need to know which face they are.
+ * The ordinal is the face number the engine deals with, in the order the deck
+ * has always been built, and tiles match when their groups are the same
+ */
+public enum TileFace {
+	CHARACTER_1(Kind.CHARACTER, '1', 0, null, "Character 1"),
+	CHARACTER_2(Kind.CHARACTER, '2', 0, null, "Character 2"),
+	CHARACTER_3(Kind.CHARACTER, '3', 0, null, "Character 3"),
+	CHARACTER_4(Kind.CHARACTER, '4', 0, null, "Character 4"),
+	CHARACTER_5(Kind.CHARACTER, '5', 0, null, "Character 5"),
+	CHARACTER_6(Kind.CHARACTER, '6', 0, null, "Character 6"),
+	CHARACTER_7(Kind.CHARACTER, '7', 0, null, "Character 7"),
+	CHARACTER_8(Kind.CHARACTER, '8', 0, null, "Character 8"),
+	CHARACTER_9(Kind.CHARACTER, '9', 0, null, "Character 9"),
+	NORTH_WIND(Kind.CHARACTER, 'N', 0, null, "North Wind"),
+	SOUTH_WIND(Kind.CHARACTER, 'S', 0, null, "South Wind"),
+	EAST_WIND(Kind.CHARACTER, 'E', 0, null, "East Wind"),
+	WEST_WIND(Kind.CHARACTER, 'W', 0, null, "West Wind"),
+	RED_DRAGON(Kind.CHARACTER, 'C', 0, null, "Red Dragon"),
+	GREEN_DRAGON(Kind.CHARACTER, 'F', 0, null, "Green Dragon"),
+	WHITE_DRAGON(Kind.WHITE_DRAGON, ' ', 0, null, "White Dragon"),
+	BAMBOO_1(Kind.BAMBOO_1, ' ', 1, "Sparrow", "Bamboo 1"),
+	BAMBOO_2(Kind.BAMBOO, ' ', 2, null, "Bamboo 2"),
+	BAMBOO_3(Kind.BAMBOO, ' ', 3, null, "Bamboo 3"),
+	BAMBOO_4(Kind.BAMBOO, ' ', 4, null, "Bamboo 4"),
+	BAMBOO_5(Kind.BAMBOO, ' ', 5, null, "Bamboo 5"),
+	BAMBOO_6(Kind.BAMBOO, ' ', 6, null, "Bamboo 6"),
+	BAMBOO_7(Kind.BAMBOO, ' ', 7, null, "Bamboo 7"),
+	BAMBOO_8(Kind.BAMBOO, ' ', 8, null, "Bamboo 8"),
+	BAMBOO_9(Kind.BAMBOO, ' ', 9, null, "Bamboo 9"),
+	CIRCLE_1(Kind.CIRCLE, ' ', 1, null, "Circle 1"),
+	CIRCLE_2(Kind.CIRCLE, ' ', 2, null, "Circle 2"),
+	CIRCLE_3(Kind.CIRCLE, ' ', 3, null, "Circle 3"),
+	CIRCLE_4(Kind.CIRCLE, ' ', 4, null, "Circle 4"),
+	CIRCLE_5(Kind.CIRCLE, ' ', 5, null, "Circle 5"),
+	CIRCLE_6(Kind.CIRCLE, ' ', 6, null, "Circle 6"),
+	CIRCLE_7(Kind.CIRCLE, ' ', 7, null, "Circle 7"),
+	CIRCLE_8(Kind.CIRCLE, ' ', 8, null, "Circle 8"),
+	CIRCLE_9(Kind.CIRCLE, ' ', 9, null, "Circle 9"),
+	CHRYSANTHEMUM(Kind.FLOWER, ' ', 0, "Chrysanthemum", "Chrysanthemum"),
+	ORCHID(Kind.FLOWER, ' ', 0, "Orchid", "Orchid"),
+	PLUM(Kind.FLOWER, ' ', 0, "Plum", "Plum"),
+	BAMBOO_FLOWER(Kind.FLOWER, ' ', 0, "Bamboo", "Bamboo"),
+	SPRING(Kind.SEASON, ' ', 0, "Spring", "Spring"),
+	SUMMER(Kind.SEASON, ' ', 0, "Summer", "Summer"),
+	FALL(Kind.SEASON, ' ', 0, "Fall", "Fall"),
+	WINTER(Kind.SEASON, ' ', 0, "Winter", "Winter");
+
+	/**
+	 * Which Tile class draws a face
+	 */
+	public enum Kind {
+		CHARACTER, WHITE_DRAGON, BAMBOO_1, BAMBOO, CIRCLE, FLOWER, SEASON
+	}
+
+	/**
+	 * The number of faces
+	 */
+	public static final int COUNT = 42;
+
+	/**
+	 * The number of match groups, one per face that comes four to the deck,
+	 * one for all the flowers and one for all the seasons
+	 */
+	public static final int GROUP_COUNT = 36;
+
+	private static final TileFace[] FACES = values();
+	private static final int[] GROUPS = new int[COUNT];
+
+	static {
+		int group = 0;
+		for (TileFace face : FACES) {
+			// Every flower shares the first flower's group, seasons likewise
+			if (face == ORCHID || face == PLUM || face == BAMBOO_FLOWER
+					|| face == SUMMER || face == FALL || face == WINTER) {
+				GROUPS[face.ordinal()] = GROUPS[face.ordinal() - 1];
+			} else {
+				GROUPS[face.ordinal()] = group++;
+			}
+		}
+	}
+
+	private final Kind kind;
+	private final char symbol;
+	private final int rank;
+	private final String imageName;
+	private final String name;
+
+	private TileFace(Kind kind, char symbol, int rank, String imageName, String name) {
+		this.kind = kind;
+		this.symbol = symbol;
+		this.rank = rank;
+		this.imageName = imageName;
+		this.name = name;
+	}
+
+	/**
+	 * Gets a face by its number
+	 *
+	 * @param id
+	 * @return
+	 */
+	public static TileFace get(int id) {
+		return FACES[id];
+	}
+
+	/**
+	 * Gets the match group of a face by its number, without going through the
+	 * enum
+	 *
+	 * @param id
+	 * @return
+	 */
+	public static int getGroup(int id) {
+		return GROUPS[id];
+	}
+
+	/**
+	 * Builds the unshuffled deck of face numbers, four of each face up to the
+	 * flowers and one of each flower and season
+	 *
+	 * @return
+	 */
+	public static int[] newDeck() {
+		int fourOfEach = CHRYSANTHEMUM.ordinal();
+		int[] deck = new int[4 * fourOfEach + (COUNT - fourOfEach)];
+		int index = 0;
+		for (int i = 0; i < 4; i++) {
+			for (int face = 0; face < fourOfEach; face++) {
+				deck[index++] = face;
+			}
+		}
+		for (int face = fourOfEach; face < COUNT; face++) {
+			deck[index++] = face;
+		}
+		return deck;
+	}
+
+	/**
+	 * Finds the character, wind or dragon face for one of the characters
+	 * CharacterTile accepts
+	 *
+	 * @param symbol
+	 * @return the face, or null if no face has that symbol
+	 */
+	public static TileFace character(char symbol) {
+		for (TileFace face : FACES) {
+			if (face.kind == Kind.CHARACTER && face.symbol == symbol) {
+				return face;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the bamboo or circle face with the given rank
+	 *
+	 * @param kind
+	 * @param rank
+	 * @return the face, or null if there is none
+	 */
+	public static TileFace ranked(Kind kind, int rank) {
+		for (TileFace face : FACES) {
+			if (face.kind == kind && face.rank == rank) {
+				return face;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the flower or season face showing the named picture
+	 *
+	 * @param imageName
+	 * @return the face, or null if there is none
+	 */
+	public static TileFace picture(String imageName) {
+		for (TileFace face : FACES) {
+			if (face.imageName != null && face.imageName.equals(imageName)) {
+				return face;
+			}
+		}
+		return null;
+	}
+
+	public int getId() {
+		return ordinal();
+	}
+
+	public int getGroup() {
+		return GROUPS[ordinal()];
+	}
+
+	public Kind getKind() {
+		return kind;
+	}
+
+	public char getSymbol() {
+		return symbol;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	public String getImageName() {
+		return imageName;
+	}
+
+	public boolean matches(TileFace otherFace) {
+		return otherFace != null && getGroup() == otherFace.getGroup();
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
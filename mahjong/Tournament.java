@@ -0,0 +1,240 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays strategies over a range of numbered games, without Swing, and reports
+ * how often each one clears the board, how many tiles it leaves when it
+ * doesn't, and how many games a second it gets through.
+ *
+ * Games are handed out to the threads a chunk at a time. Every thread has its
+ * own engine and its own instance of the strategy, and only adds its totals
+ * to the shared ones when it runs out of games, so the threads never wait on
+ * each other and the games a second go up with the cores
+ */
+public class Tournament {
+
+	/**
+	 * The strategies the tournament knows by name
+	 */
+	public static final String[] STRATEGIES = {"first-found", "greedy", "lookahead", "solver"};
+
+	// Games a thread takes at a time
+	private static final int CHUNK_SIZE = 16;
+
+	/**
+	 * How a strategy did over a range of games
+	 */
+	public static class Result {
+		private final String name;
+		private final long games;
+		private final long won;
+		private final long tilesLeft;
+		private final long elapsedNanos;
+
+		public Result(String name, long games, long won, long tilesLeft, long elapsedNanos) {
+			this.name = name;
+			this.games = games;
+			this.won = won;
+			this.tilesLeft = tilesLeft;
+			this.elapsedNanos = elapsedNanos;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getGames() {
+			return games;
+		}
+
+		public long getWon() {
+			return won;
+		}
+
+		/**
+		 * Returns the share of games won
+		 *
+		 * @return from 0 to 1
+		 */
+		public double getWinRate() {
+			return games == 0 ? 0 : (double) won / games;
+		}
+
+		/**
+		 * Returns how many tiles were left on the board on average, counting
+		 * the games that were won as none
+		 *
+		 * @return
+		 */
+		public double getAverageTilesLeft() {
+			return games == 0 ? 0 : (double) tilesLeft / games;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public double getGamesPerSecond() {
+			return elapsedNanos <= 0 ? 0 : games * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-12s %5.1f%% won, %5.1f tiles left, %8.1f games/s",
+					name, getWinRate() * 100, getAverageTilesLeft(), getGamesPerSecond());
+		}
+	}
+
+	private Tournament() {
+	}
+
+	/**
+	 * Creates a strategy from its name, with a look ahead depth after a dash
+	 * for lookahead, such as lookahead-4
+	 *
+	 * @param name
+	 * @return
+	 */
+	public static Strategy createStrategy(String name) {
+		if (name.equals("first-found")) {
+			return new FirstFoundStrategy();
+		} else if (name.equals("greedy")) {
+			return new GreedyStrategy();
+		} else if (name.equals("lookahead")) {
+			return new LookaheadStrategy();
+		} else if (name.startsWith("lookahead-")) {
+			return new LookaheadStrategy(Integer.parseInt(name.substring("lookahead-".length())));
+		} else if (name.equals("solver")) {
+			return new SolverStrategy();
+		}
+		throw new IllegalArgumentException("No strategy called " + name);
+	}
+
+	/**
+	 * Plays a game to the end
+	 *
+	 * @param strategy
+	 * @param engine dealt with the game, and left at the end of it
+	 * @param moves scratch space for twice MahjongEngine.MAX_MOVES ints
+	 * @return the number of tiles left
+	 */
+	public static int play(Strategy strategy, MahjongEngine engine, int[] moves) {
+		int count;
+		while ((count = engine.getMoves(moves)) > 0) {
+			int move = strategy.chooseMove(engine, moves, count);
+			engine.play(moves[move * 2], moves[move * 2 + 1]);
+		}
+		return engine.getRemainingCount();
+	}
+
+	/**
+	 * Plays a strategy over the games from first to last, inclusive
+	 *
+	 * @param name the strategy's name, for createStrategy
+	 * @param first
+	 * @param last
+	 * @param threads
+	 * @return
+	 * @throws InterruptedException
+	 */
+	public static Result run(final String name, final long first, final long last,
+			int threads) throws InterruptedException {
+		// Check the name before starting any threads
+		createStrategy(name);
+
+		final AtomicLong nextGame = new AtomicLong(first);
+		final AtomicLong won = new AtomicLong();
+		final AtomicLong tilesLeft = new AtomicLong();
+		final AtomicLong games = new AtomicLong();
+		long start = System.nanoTime();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		for (int i = 0; i < threads; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					Strategy strategy = createStrategy(name);
+					MahjongEngine engine = new MahjongEngine();
+					int[] moves = new int[MahjongEngine.MAX_MOVES * 2];
+					long myGames = 0;
+					long myWon = 0;
+					long myTilesLeft = 0;
+					long chunk;
+					while ((chunk = nextGame.getAndAdd(CHUNK_SIZE)) <= last) {
+						long end = Math.min(last, chunk + CHUNK_SIZE - 1);
+						for (long game = chunk; game <= end; game++) {
+							engine.deal(game);
+							int left = play(strategy, engine, moves);
+							myGames++;
+							myTilesLeft += left;
+							if (left == 0) {
+								myWon++;
+							}
+						}
+					}
+					games.addAndGet(myGames);
+					won.addAndGet(myWon);
+					tilesLeft.addAndGet(myTilesLeft);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		return new Result(name, games.get(), won.get(), tilesLeft.get(),
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Runs a tournament. The arguments are all optional: -s and a comma
+	 * separated list of strategies, -threads and a thread count, -scaling to
+	 * run each strategy on 1, 2, 4 and so on threads up to the count, and the
+	 * first and last game numbers
+	 *
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		String[] strategies = STRATEGIES;
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean scaling = false;
+		long first = 0;
+		long last = 199;
+		int numbers = 0;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-s") && i + 1 < args.length) {
+				strategies = args[++i].split(",");
+			} else if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-scaling")) {
+				scaling = true;
+			} else if (numbers++ == 0) {
+				first = Long.parseLong(args[i]);
+			} else {
+				last = Long.parseLong(args[i]);
+			}
+		}
+		if (first < 0 || first > last || threads < 1) {
+			throw new IllegalArgumentException("Need a range of games and at least one thread");
+		}
+
+		List<Integer> threadCounts = new ArrayList<>();
+		for (int count = scaling ? 1 : threads; count < threads; count *= 2) {
+			threadCounts.add(count);
+		}
+		threadCounts.add(threads);
+
+		System.out.println("Games " + first + " to " + last);
+		for (String name : strategies) {
+			for (int count : threadCounts) {
+				Result result = run(name, first, last, count);
+				System.out.println(result + " on " + count
+						+ (count == 1 ? " thread" : " threads"));
+			}
+		}
+	}
+}
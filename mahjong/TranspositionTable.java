@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+/**
+ * A fixed size table of position hashes that are known to be lost. Each hash
+ * has one slot, picked by its low bits, and a newer hash simply replaces
+ * whatever was there. A table made with stripes can be shared between
+ * threads: the slots are split into that many runs, each guarded by its own
+ * lock, so threads only wait for each other when they hit the same run
+ */
+public class TranspositionTable {
+
+	private final long[] entries;
+	private final int mask;
+
+	// One lock per stripe, or null if the table isn't shared
+	private final Object[] locks;
+	private final int stripeShift;
+
+	/**
+	 * Creates a table for a single thread with 2^bits entries
+	 *
+	 * @param bits
+	 */
+	public TranspositionTable(int bits) {
+		this(bits, 0);
+	}
+
+	/**
+	 * Creates a table with 2^bits entries that can be shared between threads
+	 *
+	 * @param bits
+	 * @param stripes how many locks to split the table between, rounded up to
+	 * a power of two, or 0 for a table that isn't shared
+	 */
+	public TranspositionTable(int bits, int stripes) {
+		if (bits < 1 || bits > 30) {
+			throw new IllegalArgumentException("Table bits must be from 1 to 30, not " + bits);
+		}
+		entries = new long[1 << bits];
+		mask = entries.length - 1;
+		if (stripes > 0) {
+			int stripeBits = 32 - Integer.numberOfLeadingZeros(Math.min(stripes, entries.length) - 1);
+			locks = new Object[1 << stripeBits];
+			for (int i = 0; i < locks.length; i++) {
+				locks[i] = new Object();
+			}
+			stripeShift = bits - stripeBits;
+		} else {
+			locks = null;
+			stripeShift = 0;
+		}
+	}
+
+	public int size() {
+		return entries.length;
+	}
+
+	public boolean isShared() {
+		return locks != null;
+	}
+
+	/**
+	 * Checks whether a position has been recorded as lost
+	 *
+	 * @param hash
+	 * @return
+	 */
+	public boolean contains(long hash) {
+		int slot = (int) hash & mask;
+		if (locks == null) {
+			return entries[slot] == hash;
+		}
+		synchronized (locks[slot >>> stripeShift]) {
+			return entries[slot] == hash;
+		}
+	}
+
+	/**
+	 * Records a position as lost
+	 *
+	 * @param hash
+	 */
+	public void add(long hash) {
+		int slot = (int) hash & mask;
+		if (locks == null) {
+			entries[slot] = hash;
+			return;
+		}
+		synchronized (locks[slot >>> stripeShift]) {
+			entries[slot] = hash;
+		}
+	}
+
+	/**
+	 * Forgets every position
+	 */
+	public void clear() {
+		if (locks == null) {
+			Arrays.fill(entries, 0);
+			return;
+		}
+		int stripeSize = entries.length / locks.length;
+		for (int stripe = 0; stripe < locks.length; stripe++) {
+			synchronized (locks[stripe]) {
+				Arrays.fill(entries, stripe * stripeSize, (stripe + 1) * stripeSize, 0);
+			}
+		}
+	}
+}
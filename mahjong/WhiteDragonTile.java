@@ -7,13 +7,11 @@ public class WhiteDragonTile extends Tile {
 	private static final long serialVersionUID = -682851555815069546L;
 
 	public WhiteDragonTile() {
-		setToolTipText(toString());
+		super(TileFace.WHITE_DRAGON);
 	}
 	
 	@Override
-	protected void paintComponent(Graphics g) {
-		super.paintComponent(g);
-		
+	protected void paintFace(Graphics g) {
 		g.setColor(BLUE);
 		int x1;
 		int y1 = 10;
@@ -51,9 +49,4 @@ public class WhiteDragonTile extends Tile {
 			g.fillRect(x2, y2, 4, 6);
 		}
 	}
-	
-	@Override
-    public String toString() {
-        return "White Dragon";
-    }
 }
@@ -0,0 +1,118 @@
+/**
+ * How often playouts won after each of the moves from a position
+ */
+public class WinEstimate {
+
+	private final int[] moves;
+	private final long[] wins;
+	private final long[] playouts;
+	private final long elapsedNanos;
+
+	/**
+	 * @param moves pairs of positions one after the other
+	 * @param wins the playouts won after each move
+	 * @param playouts the playouts made after each move
+	 * @param elapsedNanos
+	 */
+	public WinEstimate(int[] moves, long[] wins, long[] playouts, long elapsedNanos) {
+		this.moves = moves;
+		this.wins = wins;
+		this.playouts = playouts;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Returns the number of moves there were
+	 *
+	 * @return
+	 */
+	public int getCount() {
+		return wins.length;
+	}
+
+	/**
+	 * Returns a move
+	 *
+	 * @param index
+	 * @return the two positions
+	 */
+	public int[] getMove(int index) {
+		return new int[]{moves[index * 2], moves[index * 2 + 1]};
+	}
+
+	/**
+	 * Finds a move, whichever way round its positions are given
+	 *
+	 * @param first
+	 * @param second
+	 * @return the move's index, or -1 if it isn't one of the moves
+	 */
+	public int indexOf(int first, int second) {
+		for (int i = 0; i < wins.length; i++) {
+			if ((moves[i * 2] == first && moves[i * 2 + 1] == second)
+					|| (moves[i * 2] == second && moves[i * 2 + 1] == first)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public long getWins(int index) {
+		return wins[index];
+	}
+
+	public long getPlayouts(int index) {
+		return playouts[index];
+	}
+
+	/**
+	 * Returns the share of playouts won after a move
+	 *
+	 * @param index
+	 * @return from 0 to 1, or -1 if there wasn't time for any playouts
+	 */
+	public double getWinRate(int index) {
+		return playouts[index] == 0 ? -1 : (double) wins[index] / playouts[index];
+	}
+
+	/**
+	 * Returns the move with the best win rate
+	 *
+	 * @return the index, or -1 if there are no moves
+	 */
+	public int getBest() {
+		int best = -1;
+		for (int i = 0; i < wins.length; i++) {
+			if (best < 0 || getWinRate(i) > getWinRate(best)) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the number of playouts made after all the moves
+	 *
+	 * @return
+	 */
+	public long getTotalPlayouts() {
+		long total = 0;
+		for (long count : playouts) {
+			total += count;
+		}
+		return total;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * Returns the playout speed in playouts per second
+	 *
+	 * @return
+	 */
+	public long getPlayoutsPerSecond() {
+		return elapsedNanos <= 0 ? 0 : getTotalPlayouts() * 1000000000L / elapsedNanos;
+	}
+}
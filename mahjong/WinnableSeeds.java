@@ -0,0 +1,128 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * The table SeedScanner writes of which game numbers can be won, one bit per
+ * game, memory mapped so that nothing is read until it's looked at. Bit n of
+ * the file is bit n % 8 of byte n / 8, and is set when game n was solved
+ */
+public class WinnableSeeds {
+
+	/**
+	 * The number of games, one for every six digit game number
+	 */
+	public static final int SEED_COUNT = 1000000;
+
+	/**
+	 * Where the scanner writes its files and the game looks for them
+	 */
+	public static final String DEFAULT_DIRECTORY = "seeds";
+
+	/**
+	 * The bitset's file name
+	 */
+	public static final String BITS_FILE = "winnable.bits";
+
+	/**
+	 * The bitset's length in bytes
+	 */
+	public static final int BITS_LENGTH = (SEED_COUNT + 7) / 8;
+
+	// Random guesses to make before counting the table for a winnable game
+	private static final int MAX_GUESSES = 64;
+
+	private final MappedByteBuffer bits;
+	// Only counted if random guesses don't find a winnable game
+	private int winnableCount = -1;
+
+	private WinnableSeeds(MappedByteBuffer bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Maps the bitset in the given directory
+	 *
+	 * @param directory
+	 * @return the table, or null if there isn't one that can be read
+	 */
+	public static WinnableSeeds open(File directory) {
+		File file = new File(directory, BITS_FILE);
+		if (!file.isFile()) {
+			return null;
+		}
+		try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+			if (input.length() != BITS_LENGTH) {
+				System.err.println(file + " is " + input.length() + " bytes, not " + BITS_LENGTH);
+				return null;
+			}
+			// The mapping stays valid after the file is closed
+			return new WinnableSeeds(input.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, 0, BITS_LENGTH));
+		} catch (IOException e) {
+			System.err.println("Couldn't map " + file + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether a game is known to be winnable
+	 *
+	 * @param seed
+	 * @return false for games that were lost, timed out, haven't been scanned
+	 * or are out of range
+	 */
+	public boolean isWinnable(long seed) {
+		if (seed < 0 || seed >= SEED_COUNT) {
+			return false;
+		}
+		int index = (int) seed;
+		return (bits.get(index >>> 3) & (1 << (index & 7))) != 0;
+	}
+
+	/**
+	 * Picks a winnable game at random. Almost every deal can be won, so a
+	 * random guess is nearly always right the first time and this doesn't
+	 * depend on the size of the table. Only a mostly empty table is counted
+	 *
+	 * @param random
+	 * @return the game number, or -1 if no game in the table is winnable
+	 */
+	public long pick(Random random) {
+		for (int i = 0; i < MAX_GUESSES; i++) {
+			int seed = random.nextInt(SEED_COUNT);
+			if (isWinnable(seed)) {
+				return seed;
+			}
+		}
+
+		// Mostly empty, probably a partial scan, so choose evenly from the
+		// winnable games there are
+		if (winnableCount < 0) {
+			int count = 0;
+			for (int index = 0; index < BITS_LENGTH; index++) {
+				count += Integer.bitCount(bits.get(index) & 0xff);
+			}
+			winnableCount = count;
+		}
+		if (winnableCount == 0) {
+			return -1;
+		}
+		int skip = random.nextInt(winnableCount);
+		for (int index = 0; index < BITS_LENGTH; index++) {
+			int value = bits.get(index) & 0xff;
+			int count = Integer.bitCount(value);
+			if (skip < count) {
+				for (int i = 0; i < skip; i++) {
+					value &= value - 1;
+				}
+				return index * 8L + Integer.numberOfTrailingZeros(value);
+			}
+			skip -= count;
+		}
+		return -1;
+	}
+}